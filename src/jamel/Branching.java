@@ -0,0 +1,261 @@
+package jamel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import jamel.util.Parameters;
+import jamel.util.PeriodListener;
+import jamel.util.Simulation;
+
+/**
+ * Runs counterfactual branches of a scenario.
+ *
+ * The scenario is simulated once up to the period of the fork (the trunk),
+ * then a checkpoint is written, and each branch is restored from this
+ * checkpoint with its own events. The branches share the history of the
+ * trunk, which is computed only once, and run in parallel.
+ *
+ * A branching is described by an XML element such as:
+ *
+ * <pre>
+ * {@code
+ * <branching scenario="02.xml" fork="300" end="500" seed="1" threads="4">
+ * 	<branch name="baseline" />
+ * 	<branch name="shock">
+ * 		<when t="301">
+ * 			<do sector="Banks" action="set" ... />
+ * 		</when>
+ * 	</branch>
+ * 	<output name="firms">val(Sector2, count, t, sum)</output>
+ * </branching>
+ * }
+ * </pre>
+ *
+ * The events of a branch are added to the events of the scenario; they must
+ * occur after the fork (their attribute {@code t} must be greater than the
+ * fork, and may be omitted only for repeated or conditional events). All the {@code <public>} data of the scenario are
+ * tracked, plus the expressions of the {@code <output>} elements, and printed
+ * for each branch and for each period after the fork.
+ *
+ * The model of the scenario must support checkpoints (the attribute
+ * {@code restore} of the scenario, and the action {@code checkpoint}).
+ */
+public class Branching {
+
+	/**
+	 * The events of each branch, by name.
+	 */
+	final private Map<String, List<Parameters>> branches = new LinkedHashMap<>();
+
+	/**
+	 * The last period to be simulated.
+	 */
+	final private int end;
+
+	/**
+	 * The file of the scenario.
+	 */
+	final private File file;
+
+	/**
+	 * The last period of the trunk.
+	 */
+	final private int fork;
+
+	/**
+	 * The names of the tracked data.
+	 */
+	final private List<String> names;
+
+	/**
+	 * The new expressions to be tracked, by name.
+	 */
+	final private Map<String, String> outputs = new LinkedHashMap<>();
+
+	/**
+	 * The scenario.
+	 */
+	final private Document scenario;
+
+	/**
+	 * The random seed, or {@code null} to keep the seed of the scenario.
+	 */
+	final private Integer seed;
+
+	/**
+	 * The maximum number of branches running at once.
+	 */
+	final private int threads;
+
+	/**
+	 * Creates a new branching.
+	 *
+	 * @param params
+	 *            the description of the branching.
+	 * @param branchingFile
+	 *            the file that contains the description of the branching
+	 *            (used to resolve the path of the scenario).
+	 */
+	public Branching(final Parameters params, final File branchingFile) {
+		if (!params.getName().equals("branching")) {
+			throw new RuntimeException("Bad element: " + params.getName());
+		}
+		if (params.getAttribute("scenario").isEmpty()) {
+			throw new RuntimeException("branching: missing attribute: scenario");
+		}
+		this.file = new File(branchingFile.getAbsoluteFile().getParentFile(), params.getAttribute("scenario"));
+		this.scenario = SimulationPool.parse(this.file);
+		this.fork = params.getIntAttribute("fork");
+		this.end = params.getIntAttribute("end");
+		this.seed = params.hasAttribute("seed") ? params.getIntAttribute("seed") : null;
+		this.threads = params.hasAttribute("threads") ? params.getIntAttribute("threads")
+				: Runtime.getRuntime().availableProcessors();
+		if (this.fork < 0 || this.fork >= this.end) {
+			throw new RuntimeException("branching: bad fork: " + this.fork);
+		}
+		for (final Parameters branch : params.getAll("branch")) {
+			final String name = branch.getAttribute("name");
+			if (name.isEmpty() || this.branches.containsKey(name)) {
+				throw new RuntimeException("branch: missing or duplicate name: \'" + name + "\'");
+			}
+			final List<Parameters> events = branch.getAll("when");
+			for (final Parameters event : events) {
+				// A repeated or conditional event without t is only scheduled
+				// in the branch, thus after the fork.
+				if (event.hasAttribute("t")) {
+					if (event.getIntAttribute("t") <= this.fork) {
+						throw new RuntimeException(
+								"branch " + name + ": event before the fork: " + event.getAttribute("t"));
+					}
+				} else if (!event.hasAttribute("every") && !event.hasAttribute("condition")) {
+					throw new RuntimeException("branch " + name + ": when: missing attribute: t");
+				}
+			}
+			this.branches.put(name, events);
+		}
+		if (this.branches.isEmpty()) {
+			throw new RuntimeException("branching: no branch");
+		}
+		this.names = SimulationPool.getPublicDataNames(this.scenario);
+		for (final Parameters output : params.getAll("output")) {
+			final String name = output.getAttribute("name");
+			if (this.names.contains(name)) {
+				throw new RuntimeException("output: public data already defined: " + name);
+			}
+			this.outputs.put(name, output.getText());
+			this.names.add(name);
+		}
+	}
+
+	/**
+	 * Runs the trunk, then the branches, and prints the table of the tracked
+	 * data, one tab-separated row by branch and by period after the fork, into
+	 * the specified stream.
+	 *
+	 * @param out
+	 *            the output stream.
+	 * @return {@code true} if the trunk and all the branches completed,
+	 *         {@code false} otherwise.
+	 */
+	public boolean run(final PrintStream out) {
+		final File checkpoint;
+		try {
+			checkpoint = File.createTempFile("jamel-", ".checkpoint");
+		} catch (IOException e) {
+			throw new RuntimeException("Something went wrong while creating the checkpoint file.", e);
+		}
+		checkpoint.deleteOnExit();
+
+		try {
+
+			// The trunk.
+
+			final Document trunk = (Document) this.scenario.cloneNode(true);
+			final Element when = trunk.createElement("when");
+			when.setAttribute("t", "" + this.fork);
+			final Element action = trunk.createElement("do");
+			action.setAttribute("action", "checkpoint");
+			action.setAttribute("file", checkpoint.getAbsolutePath());
+			when.appendChild(action);
+			SimulationPool.addEvent(trunk, when);
+			final SimulationPool.Result trunkResult = SimulationPool.run(trunk, this.file, this.fork, this.seed);
+			if (!trunkResult.isCompleted()) {
+				return false;
+			}
+			if (checkpoint.length() == 0) {
+				throw new RuntimeException("branching: no checkpoint written (the model must support checkpoints)");
+			}
+
+			// The branches.
+
+			final SimulationPool pool = new SimulationPool(this.threads);
+			final Map<String, Future<SimulationPool.Result>> futures = new LinkedHashMap<>();
+			final Map<String, Double[][]> values = new LinkedHashMap<>();
+			for (final Map.Entry<String, List<Parameters>> branch : this.branches.entrySet()) {
+				final Document variant = (Document) this.scenario.cloneNode(true);
+				variant.getDocumentElement().setAttribute("restore", checkpoint.getAbsolutePath());
+				for (final Parameters event : branch.getValue()) {
+					SimulationPool.addEvent(variant, (Element) variant.importNode(event.getElem(), true));
+				}
+				SimulationPool.addPublicData(variant, this.outputs);
+				final Double[][] table = new Double[this.end - this.fork][this.names.size()];
+				values.put(branch.getKey(), table);
+				final PeriodListener listener = new PeriodListener() {
+
+					@Override
+					public void periodClosed(Simulation simulation) {
+						final int t = simulation.getPeriod();
+						if (t > fork && t <= end) {
+							for (int i = 0; i < names.size(); i++) {
+								table[t - fork - 1][i] = simulation.getPublicData(names.get(i));
+							}
+						}
+					}
+
+				};
+				futures.put(branch.getKey(), pool.submit(variant, this.file, this.end, null, listener));
+			}
+			pool.shutdown();
+
+			boolean completed = true;
+			for (final Future<SimulationPool.Result> future : futures.values()) {
+				try {
+					completed &= future.get().isCompleted();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException("Something went wrong while running the branches.", e);
+				}
+			}
+
+			final StringBuilder header = new StringBuilder("branch\tperiod");
+			for (final String name : this.names) {
+				header.append('\t').append(name);
+			}
+			out.println(header);
+			for (final Map.Entry<String, Double[][]> branch : values.entrySet()) {
+				final Double[][] table = branch.getValue();
+				for (int k = 0; k < table.length; k++) {
+					final StringBuilder line = new StringBuilder(branch.getKey());
+					line.append('\t').append(this.fork + 1 + k);
+					for (final Double value : table[k]) {
+						line.append('\t').append(value);
+					}
+					out.println(line);
+				}
+			}
+			return completed;
+
+		} finally {
+			checkpoint.delete();
+		}
+	}
+
+}
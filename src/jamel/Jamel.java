@@ -1,5 +1,6 @@
 package jamel;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -82,6 +83,12 @@ public class Jamel {
 
 	}
 
+	/**
+	 * A flag that indicates whether Jamel runs without any graphical user
+	 * interface (batch mode).
+	 */
+	private static boolean headless = false;
+
 	/**
 	 * Message see the console for more details.
 	 */
@@ -99,7 +106,7 @@ public class Jamel {
 	 *            the scenario file.
 	 * @return a new simulation.
 	 */
-	private static Simulation newSimulation(final Parameters parameters, final File file) {
+	static Simulation newSimulation(final Parameters parameters, final File file) {
 		if (file == null) {
 			throw new IllegalArgumentException("Path is null");
 		}
@@ -150,17 +157,108 @@ public class Jamel {
 		}
 	}
 
+	/**
+	 * Returns the stream of the diagnostic messages.
+	 * 
+	 * In headless mode, the standard output stream carries the results of the
+	 * batch: the messages are printed into the standard error stream.
+	 * 
+	 * @return the stream of the diagnostic messages.
+	 */
+	private static PrintStream getConsole() {
+		return headless ? System.err : System.out;
+	}
+
+	/**
+	 * Runs the specified scenario without any graphical user interface, then
+	 * prints a summary of the run.
+	 * 
+	 * The summary is printed into the standard output stream, one
+	 * {@code key=value} entry by line, after a line starting with
+	 * {@code # summary}.
+	 * 
+	 * With only one argument, the file must contain the description of a
+	 * {@link ParameterSweep} or of a {@link MonteCarlo} replication, whose
+	 * table of results is printed.
+	 * 
+	 * @param args
+	 *            the path to the scenario file, the last period to be
+	 *            simulated and, optionally, a random seed that overrides the
+	 *            {@code randomSeed} attribute of the scenario; or the path to
+	 *            a sweep or replication file.
+	 * @return {@code true} if the simulation ran to its end, {@code false}
+	 *         otherwise.
+	 */
+	private static boolean runBatch(final String[] args) {
+		if (args.length == 1) {
+			final File file = new File(args[0]);
+			final Parameters description = new Parameters(SimulationPool.parse(file).getDocumentElement());
+			final boolean result;
+			switch (description.getName()) {
+			case "sweep":
+				result = new ParameterSweep(description, file).run(System.out);
+				break;
+			case "montecarlo":
+				result = new MonteCarlo(description, file).run(System.out);
+				break;
+			case "branching":
+				result = new Branching(description, file).run(System.out);
+				break;
+			default:
+				System.err.println("Bad root: " + description.getName());
+				result = false;
+			}
+			return result;
+		}
+		if (args.length > 3) {
+			System.err.println("Usage: java jamel.Jamel <scenario.xml> <end> [<randomSeed>]");
+			System.err.println("       java jamel.Jamel <sweep.xml>|<montecarlo.xml>|<branching.xml>");
+			return false;
+		}
+		final File file = new File(args[0]);
+		final int end;
+		final Integer randomSeed;
+		try {
+			end = Integer.parseInt(args[1]);
+			randomSeed = (args.length == 3) ? Integer.parseInt(args[2]) : null;
+		} catch (NumberFormatException e) {
+			System.err.println("Bad number: " + e.getMessage());
+			System.err.println("Usage: java jamel.Jamel <scenario.xml> <end> [<randomSeed>]");
+			return false;
+		}
+		final SimulationPool.Result result;
+		try {
+			result = SimulationPool.run(SimulationPool.parse(file), file, end, randomSeed);
+		} catch (RuntimeException e) {
+			Jamel.println("***");
+			Jamel.println("Something went wrong while creating the simulation.");
+			Jamel.println();
+			e.printStackTrace();
+			return false;
+		}
+		System.out.println("# summary");
+		System.out.print(result);
+		return result.isCompleted();
+	}
+
 	/**
 	 * Displays an error message;
 	 * 
+	 * In headless mode, the message is printed into the standard error stream.
+	 * 
 	 * @param title
 	 *            the title.
 	 * @param message
 	 *            the message.
 	 */
 	public static void errorMessage(final String title, final String message) {
-		JOptionPane.showMessageDialog(null, "<html>Jamel said:<br>\"" + message + "\"<br>" + seeLogFile + "</html>",
-				title, JOptionPane.ERROR_MESSAGE);
+		if (isHeadless()) {
+			System.err.println(title + ": " + message);
+		} else {
+			JOptionPane.showMessageDialog(null,
+					"<html>Jamel said:<br>\"" + message + "\"<br>" + seeLogFile + "</html>", title,
+					JOptionPane.ERROR_MESSAGE);
+		}
 	}
 
 	/**
@@ -172,15 +270,44 @@ public class Jamel {
 		return "" + version;
 	}
 
+	/**
+	 * Returns {@code true} if Jamel runs without any graphical user interface,
+	 * {@code false} otherwise.
+	 * 
+	 * @return {@code true} if Jamel runs without any graphical user interface,
+	 *         {@code false} otherwise.
+	 */
+	public static boolean isHeadless() {
+		return headless || GraphicsEnvironment.isHeadless();
+	}
+
+	/**
+	 * Switches Jamel to the headless mode: no dialog will be displayed.
+	 */
+	static void setHeadless() {
+		headless = true;
+	}
+
 	/**
 	 * The main method for Jamel.
 	 * 
+	 * Without argument, pops up a dialog to choose the scenario to be run.
+	 * With arguments, runs the specified scenario in headless (batch) mode:
+	 * {@code <scenario.xml> <end> [<randomSeed>]}, or the specified parameter
+	 * sweep or replication: {@code <sweep.xml>}.
+	 * 
 	 * @param args
-	 *            unused.
+	 *            the arguments for the headless mode, or nothing.
 	 */
 	@SuppressWarnings("resource")
 	public static void main(String[] args) {
 
+		if (args.length > 0) {
+			setHeadless();
+			final boolean completed = runBatch(args);
+			System.exit(completed ? 0 : 1);
+		}
+
 		final FileOutputStream fileOutputStream;
 		try {
 			fileOutputStream = new FileOutputStream("jamel.log");
@@ -279,36 +406,39 @@ public class Jamel {
 	}
 
 	/**
-	 * A short cut for {@code System.out.println()}.
+	 * Terminates the current line of the console (see {@link #getConsole()}).
 	 */
 	public static void println() {
-		System.out.println();
+		getConsole().println();
 	}
 
 	/**
-	 * Prints the specified numbers into the "standard" output stream. Numbers
-	 * are printed on the same line and are separated by commas.
+	 * Prints the specified numbers into the console (see
+	 * {@link #getConsole()}). Numbers are printed on the same line and are
+	 * separated by commas.
 	 * 
 	 * @param numbers
 	 *            the numbers to be printed.
 	 */
 	public static void println(Number... numbers) {
+		final PrintStream console = getConsole();
 		for (int i = 0; i < numbers.length; i++) {
-			System.out.print(numbers[i]);
+			console.print(numbers[i]);
 			if (i < numbers.length - 1) {
-				System.out.print(", ");
+				console.print(", ");
 			}
 		}
-		System.out.println();
+		console.println();
 	}
 
 	/**
-	 * Prints several objects.
+	 * Prints several objects into the console (see {@link #getConsole()}).
 	 *
 	 * @param objects
 	 *            The objects to be printed.
 	 */
 	public static void println(Object... objects) {
+		final PrintStream console = getConsole();
 		for (int i = 0; i < objects.length; i++) {
 			final String string;
 			if (objects[i] == null) {
@@ -316,29 +446,31 @@ public class Jamel {
 			} else {
 				string = objects[i].toString();
 			}
-			System.out.print(string);
+			console.print(string);
 			if (i < objects.length - 1) {
-				System.out.print(", ");
+				console.print(", ");
 			}
 		}
-		System.out.println();
+		console.println();
 	}
 
 	/**
-	 * Prints the specified strings into the "standard" output stream. Strings
-	 * are printed on the same line and are separated by commas.
+	 * Prints the specified strings into the console (see
+	 * {@link #getConsole()}). Strings are printed on the same line and are
+	 * separated by commas.
 	 * 
 	 * @param strings
 	 *            the strings to be printed.
 	 */
 	public static void println(String... strings) {
+		final PrintStream console = getConsole();
 		for (int i = 0; i < strings.length; i++) {
-			System.out.print(strings[i]);
+			console.print(strings[i]);
 			if (i < strings.length - 1) {
-				System.out.print(", ");
+				console.print(", ");
 			}
 		}
-		System.out.println();
+		console.println();
 	}
 
 }
@@ -0,0 +1,454 @@
+package jamel;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.w3c.dom.Document;
+
+import jamel.util.Parameters;
+import jamel.util.PeriodListener;
+import jamel.util.Simulation;
+
+/**
+ * Runs a scenario with many random seeds and aggregates, period by period,
+ * the tracked data of all the runs.
+ *
+ * The statistics (count, mean, variance, quantiles) are computed online, as
+ * the runs progress: the memory used does not depend on the number of runs,
+ * and no series is retained. The quantiles are estimated with the P² algorithm
+ * (Jain and Chlamtac, 1985), which is exact up to five runs and becomes
+ * accurate as the number of runs grows.
+ *
+ * A replication is described by an XML element such as:
+ *
+ * <pre>
+ * {@code
+ * <montecarlo scenario="02.xml" end="500" runs="500" seed="1" threads="8" quantiles="0.05,0.5,0.95">
+ * 	<output name="firms">val(Sector2, count, t, sum)</output>
+ * </montecarlo>
+ * }
+ * </pre>
+ *
+ * All the {@code <public>} data of the scenario are tracked, plus the
+ * expressions of the {@code <output>} elements. The random seeds of the runs
+ * are {@code seed}, {@code seed+1}, ..., {@code seed+runs-1}.
+ *
+ * As the runs are aggregated in the order they progress, the last digits of
+ * the statistics may vary from one replication to another.
+ */
+public class MonteCarlo {
+
+	/**
+	 * An online estimator of a quantile: the P² algorithm.
+	 */
+	private static class P2Quantile {
+
+		/**
+		 * The increments of the desired positions of the markers.
+		 */
+		final private double[] increments;
+
+		/**
+		 * The desired positions of the markers.
+		 */
+		final private double[] desired;
+
+		/**
+		 * The number of observations.
+		 */
+		private int count = 0;
+
+		/**
+		 * The heights of the markers (the first five observations, at the
+		 * beginning).
+		 */
+		final private double[] heights = new double[5];
+
+		/**
+		 * The positions of the markers.
+		 */
+		final private int[] positions = { 0, 1, 2, 3, 4 };
+
+		/**
+		 * The probability of the quantile.
+		 */
+		final private double p;
+
+		/**
+		 * Creates a new estimator.
+		 *
+		 * @param p
+		 *            the probability of the quantile, in [0, 1].
+		 */
+		private P2Quantile(final double p) {
+			this.p = p;
+			this.desired = new double[] { 0, 2 * p, 4 * p, 2 + 2 * p, 4 };
+			this.increments = new double[] { 0, p / 2, p, (1 + p) / 2, 1 };
+		}
+
+		/**
+		 * Adds an observation.
+		 *
+		 * @param x
+		 *            the observation.
+		 */
+		private void add(final double x) {
+			if (this.count < 5) {
+				this.heights[this.count] = x;
+				this.count++;
+				if (this.count == 5) {
+					Arrays.sort(this.heights);
+				}
+				return;
+			}
+			this.count++;
+			final int k;
+			if (x < this.heights[0]) {
+				this.heights[0] = x;
+				k = 0;
+			} else if (x >= this.heights[4]) {
+				this.heights[4] = x;
+				k = 3;
+			} else {
+				int i = 1;
+				while (x >= this.heights[i]) {
+					i++;
+				}
+				k = i - 1;
+			}
+			for (int i = k + 1; i < 5; i++) {
+				this.positions[i]++;
+			}
+			for (int i = 0; i < 5; i++) {
+				this.desired[i] += this.increments[i];
+			}
+			for (int i = 1; i < 4; i++) {
+				final double d = this.desired[i] - this.positions[i];
+				if ((d >= 1 && this.positions[i + 1] - this.positions[i] > 1)
+						|| (d <= -1 && this.positions[i - 1] - this.positions[i] < -1)) {
+					final int sign = (d > 0) ? 1 : -1;
+					final double parabolic = this.parabolic(i, sign);
+					if (this.heights[i - 1] < parabolic && parabolic < this.heights[i + 1]) {
+						this.heights[i] = parabolic;
+					} else {
+						this.heights[i] += sign * (this.heights[i + sign] - this.heights[i])
+								/ (this.positions[i + sign] - this.positions[i]);
+					}
+					this.positions[i] += sign;
+				}
+			}
+		}
+
+		/**
+		 * Returns the current estimate of the quantile.
+		 *
+		 * @return the current estimate of the quantile, or {@code null} if
+		 *         there is no observation.
+		 */
+		private Double get() {
+			final Double result;
+			if (this.count == 0) {
+				result = null;
+			} else if (this.count < 5) {
+				final double[] sorted = Arrays.copyOf(this.heights, this.count);
+				Arrays.sort(sorted);
+				result = sorted[(int) Math.round(this.p * (this.count - 1))];
+			} else {
+				result = this.heights[2];
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the parabolic prediction of the height of the specified
+		 * marker.
+		 *
+		 * @param i
+		 *            the index of the marker.
+		 * @param d
+		 *            the move of the marker (1 or -1).
+		 * @return the parabolic prediction.
+		 */
+		private double parabolic(final int i, final int d) {
+			final double[] q = this.heights;
+			final int[] n = this.positions;
+			return q[i] + d / (double) (n[i + 1] - n[i - 1])
+					* ((n[i] - n[i - 1] + d) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+							+ (n[i + 1] - n[i] - d) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+		}
+
+	}
+
+	/**
+	 * The online statistics of one data for one period.
+	 */
+	private static class Statistics {
+
+		/**
+		 * The number of observations.
+		 */
+		private long count = 0;
+
+		/**
+		 * The sum of the squares of the differences from the mean.
+		 */
+		private double m2 = 0;
+
+		/**
+		 * The mean.
+		 */
+		private double mean = 0;
+
+		/**
+		 * The quantile estimators.
+		 */
+		final private P2Quantile[] quantiles;
+
+		/**
+		 * Creates new statistics.
+		 *
+		 * @param probabilities
+		 *            the probabilities of the quantiles to be estimated.
+		 */
+		private Statistics(final double[] probabilities) {
+			this.quantiles = new P2Quantile[probabilities.length];
+			for (int i = 0; i < probabilities.length; i++) {
+				this.quantiles[i] = new P2Quantile(probabilities[i]);
+			}
+		}
+
+		/**
+		 * Adds an observation (Welford's algorithm).
+		 *
+		 * @param x
+		 *            the observation.
+		 */
+		private synchronized void add(final double x) {
+			this.count++;
+			final double delta = x - this.mean;
+			this.mean += delta / this.count;
+			this.m2 += delta * (x - this.mean);
+			for (final P2Quantile quantile : this.quantiles) {
+				quantile.add(x);
+			}
+		}
+
+		/**
+		 * Appends the statistics, tab-separated, to the specified line.
+		 *
+		 * @param line
+		 *            the line.
+		 */
+		private synchronized void appendTo(final StringBuilder line) {
+			line.append('\t').append(this.count);
+			line.append('\t').append((this.count > 0) ? this.mean : null);
+			line.append('\t').append((this.count > 1) ? this.m2 / (this.count - 1) : null);
+			for (final P2Quantile quantile : this.quantiles) {
+				line.append('\t').append(quantile.get());
+			}
+		}
+
+	}
+
+	/**
+	 * The last period to be simulated.
+	 */
+	final private int end;
+
+	/**
+	 * The file of the scenario.
+	 */
+	final private File file;
+
+	/**
+	 * The names of the tracked data.
+	 */
+	final private List<String> names;
+
+	/**
+	 * The new expressions to be tracked, by name.
+	 */
+	final private Map<String, String> outputs = new LinkedHashMap<>();
+
+	/**
+	 * The probabilities of the quantiles to be estimated.
+	 */
+	final private double[] quantiles;
+
+	/**
+	 * The number of runs.
+	 */
+	final private int runs;
+
+	/**
+	 * The scenario.
+	 */
+	final private Document scenario;
+
+	/**
+	 * The random seed of the first run.
+	 */
+	final private int seed;
+
+	/**
+	 * The statistics, by period and by data.
+	 */
+	final private Statistics[][] statistics;
+
+	/**
+	 * The maximum number of simulations running at once.
+	 */
+	final private int threads;
+
+	/**
+	 * Creates a new replication.
+	 *
+	 * @param params
+	 *            the description of the replication.
+	 * @param montecarloFile
+	 *            the file that contains the description of the replication
+	 *            (used to resolve the path of the scenario).
+	 */
+	public MonteCarlo(final Parameters params, final File montecarloFile) {
+		if (!params.getName().equals("montecarlo")) {
+			throw new RuntimeException("Bad element: " + params.getName());
+		}
+		if (params.getAttribute("scenario").isEmpty()) {
+			throw new RuntimeException("montecarlo: missing attribute: scenario");
+		}
+		this.file = new File(montecarloFile.getAbsoluteFile().getParentFile(), params.getAttribute("scenario"));
+		this.scenario = SimulationPool.parse(this.file);
+		this.end = params.getIntAttribute("end");
+		this.runs = params.getIntAttribute("runs");
+		this.seed = params.hasAttribute("seed") ? params.getIntAttribute("seed") : 1;
+		this.threads = params.hasAttribute("threads") ? params.getIntAttribute("threads")
+				: Runtime.getRuntime().availableProcessors();
+		final String[] probabilities = (params.hasAttribute("quantiles") ? params.getAttribute("quantiles")
+				: "0.05,0.5,0.95").split(",");
+		this.quantiles = new double[probabilities.length];
+		for (int i = 0; i < probabilities.length; i++) {
+			this.quantiles[i] = Double.parseDouble(probabilities[i].trim());
+			if (this.quantiles[i] < 0 || this.quantiles[i] > 1) {
+				throw new RuntimeException("montecarlo: bad quantile: " + probabilities[i]);
+			}
+		}
+		this.names = SimulationPool.getPublicDataNames(this.scenario);
+		for (final Parameters output : params.getAll("output")) {
+			final String name = output.getAttribute("name");
+			if (this.names.contains(name)) {
+				throw new RuntimeException("output: public data already defined: " + name);
+			}
+			this.outputs.put(name, output.getText());
+			this.names.add(name);
+		}
+		if (this.runs < 1) {
+			throw new RuntimeException("montecarlo: bad number of runs: " + this.runs);
+		}
+		this.statistics = new Statistics[this.end + 1][this.names.size()];
+		for (int t = 0; t <= this.end; t++) {
+			for (int i = 0; i < this.names.size(); i++) {
+				this.statistics[t][i] = new Statistics(this.quantiles);
+			}
+		}
+	}
+
+	/**
+	 * Removes the completed runs from the specified list.
+	 *
+	 * @param futures
+	 *            the futures of the runs.
+	 * @param wait
+	 *            {@code true} to wait for all the runs to complete.
+	 * @return {@code true} if all the removed runs completed, {@code false}
+	 *         otherwise.
+	 */
+	private static boolean collect(final List<Future<SimulationPool.Result>> futures, final boolean wait) {
+		boolean completed = true;
+		final Iterator<Future<SimulationPool.Result>> iterator = futures.iterator();
+		while (iterator.hasNext()) {
+			final Future<SimulationPool.Result> future = iterator.next();
+			if (wait || future.isDone()) {
+				try {
+					completed &= future.get().isCompleted();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new RuntimeException("Something went wrong while running the replication.", e);
+				}
+				iterator.remove();
+			}
+		}
+		return completed;
+	}
+
+	/**
+	 * Runs the replication and prints the table of the statistics, one
+	 * tab-separated row by period, into the specified stream.
+	 *
+	 * @param out
+	 *            the output stream.
+	 * @return {@code true} if all the runs completed, {@code false}
+	 *         otherwise.
+	 */
+	public boolean run(final PrintStream out) {
+		final Document variant = (Document) this.scenario.cloneNode(true);
+		SimulationPool.addPublicData(variant, this.outputs);
+
+		final PeriodListener listener = new PeriodListener() {
+
+			@Override
+			public void periodClosed(Simulation simulation) {
+				final int t = simulation.getPeriod();
+				if (t < 0 || t > end) {
+					return;
+				}
+				for (int i = 0; i < names.size(); i++) {
+					final Double value = simulation.getPublicData(names.get(i));
+					if (value != null && Double.isFinite(value)) {
+						statistics[t][i].add(value);
+					}
+				}
+			}
+
+		};
+
+		// The pool accepts a new run only when a thread is free: the runs
+		// that completed are collected after each submission, so that only
+		// the runs in flight are retained.
+		final SimulationPool pool = new SimulationPool(this.threads);
+		final List<Future<SimulationPool.Result>> futures = new LinkedList<>();
+		boolean completed = true;
+		for (int k = 0; k < this.runs; k++) {
+			futures.add(pool.submit(variant, this.file, this.end, this.seed + k, listener));
+			completed &= collect(futures, false);
+		}
+		pool.shutdown();
+		completed &= collect(futures, true);
+
+		final StringBuilder header = new StringBuilder("period");
+		for (final String name : this.names) {
+			header.append('\t').append(name).append(".n");
+			header.append('\t').append(name).append(".mean");
+			header.append('\t').append(name).append(".variance");
+			for (final double p : this.quantiles) {
+				header.append('\t').append(name).append(".q").append(p);
+			}
+		}
+		out.println(header);
+		for (int t = 0; t <= this.end; t++) {
+			final StringBuilder line = new StringBuilder().append(t);
+			for (int i = 0; i < this.names.size(); i++) {
+				this.statistics[t][i].appendTo(line);
+			}
+			out.println(line);
+		}
+		return completed;
+	}
+
+}
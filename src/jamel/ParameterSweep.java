@@ -0,0 +1,441 @@
+package jamel;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import jamel.util.Parameters;
+import jamel.util.RandomStreams;
+
+/**
+ * A sweep over the parameters of a scenario.
+ *
+ * The variants of the scenario are generated in memory, executed in parallel
+ * by a {@link SimulationPool}, and their results are collected into a single
+ * table.
+ *
+ * A sweep is described by an XML element such as:
+ *
+ * <pre>
+ * {@code
+ * <sweep scenario="02.xml" end="500" design="lhs" runs="20" seed="1" threads="8">
+ * 	<parameter path="/simulation/@randomSeed" values="1,2,3" />
+ * 	<parameter name="wageFlexibility"
+ * 		path="//sector[@name='Sector2']/parameters/@wage.flexibility"
+ * 		min="0.01" max="0.05" steps="5" />
+ * 	<output name="inflation" />
+ * 	<output name="firms">val(Sector2, count, t, sum)</output>
+ * </sweep>
+ * }
+ * </pre>
+ *
+ * The {@code path} of a parameter is an XPath expression that selects one or
+ * more attributes of the scenario. The {@code design} is {@code grid} (the
+ * cartesian product of the {@code values} or of the {@code steps} of each
+ * parameter), {@code random} ({@code runs} independent draws), or
+ * {@code lhs} ({@code runs} draws from a Latin hypercube). Parameters with
+ * {@code type="int"} are rounded. An {@code output} without text refers to an
+ * existing {@code <public>} data of the scenario; an output with a text is a
+ * new expression, evaluated at the end of the run.
+ */
+public class ParameterSweep {
+
+	/**
+	 * A dimension of the sweep, ie, a parameter and the values it can take.
+	 */
+	private static class Dimension {
+
+		/**
+		 * {@code true} if the values must be rounded.
+		 */
+		final private boolean integer;
+
+		/**
+		 * The upper bound of the range.
+		 */
+		final private double max;
+
+		/**
+		 * The lower bound of the range.
+		 */
+		final private double min;
+
+		/**
+		 * The name of the dimension.
+		 */
+		final private String name;
+
+		/**
+		 * The XPath expression that selects the attributes to be set.
+		 */
+		final private XPathExpression path;
+
+		/**
+		 * The number of steps of the range in a grid design.
+		 */
+		final private int steps;
+
+		/**
+		 * The explicit values, or {@code null} if a range is used.
+		 */
+		final private String[] values;
+
+		/**
+		 * Creates a new dimension.
+		 *
+		 * @param params
+		 *            the description of the dimension.
+		 */
+		private Dimension(final Parameters params) {
+			final String pathString = params.getAttribute("path");
+			if (pathString.isEmpty()) {
+				throw new RuntimeException("parameter: missing attribute: path");
+			}
+			this.name = params.hasAttribute("name") ? params.getAttribute("name") : pathString;
+			try {
+				this.path = XPathFactory.newInstance().newXPath().compile(pathString);
+			} catch (XPathExpressionException e) {
+				throw new RuntimeException("Bad path: " + pathString, e);
+			}
+			this.integer = params.getAttribute("type").equals("int");
+			if (params.hasAttribute("values")) {
+				this.values = params.getAttribute("values").split(",");
+				for (int i = 0; i < this.values.length; i++) {
+					this.values[i] = this.values[i].trim();
+				}
+				this.min = Double.NaN;
+				this.max = Double.NaN;
+				this.steps = this.values.length;
+			} else {
+				if (!params.hasAttribute("min") || !params.hasAttribute("max")) {
+					throw new RuntimeException(this.name + ": missing attribute: values, or min and max");
+				}
+				this.values = null;
+				this.min = params.getDoubleAttribute("min");
+				this.max = params.getDoubleAttribute("max");
+				this.steps = params.hasAttribute("steps") ? params.getIntAttribute("steps") : 2;
+				if (this.steps < 1) {
+					throw new RuntimeException(this.name + ": bad number of steps: " + this.steps);
+				}
+			}
+		}
+
+		/**
+		 * Returns the value of the specified step of this dimension (grid
+		 * design).
+		 *
+		 * @param step
+		 *            the index of the step.
+		 * @return the value of the specified step.
+		 */
+		private String getStep(final int step) {
+			final String result;
+			if (this.values != null) {
+				result = this.values[step];
+			} else if (this.steps == 1) {
+				result = this.getValue(0);
+			} else {
+				final double value = this.min + step * (this.max - this.min) / (this.steps - 1);
+				result = this.integer ? "" + Math.round(value) : "" + value;
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the value at the specified position, in [0, 1], of this
+		 * dimension.
+		 *
+		 * @param x
+		 *            the position of the value.
+		 * @return the value at the specified position.
+		 */
+		private String getValue(final double x) {
+			final String result;
+			if (this.values != null) {
+				result = this.values[Math.min((int) (x * this.values.length), this.values.length - 1)];
+			} else {
+				final double value = this.min + x * (this.max - this.min);
+				result = this.integer ? "" + Math.round(value) : "" + value;
+			}
+			return result;
+		}
+
+		/**
+		 * Sets the specified value in the specified scenario.
+		 *
+		 * @param scenario
+		 *            the scenario.
+		 * @param value
+		 *            the value.
+		 */
+		private void set(final Document scenario, final String value) {
+			final NodeList nodes;
+			try {
+				nodes = (NodeList) this.path.evaluate(scenario, XPathConstants.NODESET);
+			} catch (XPathExpressionException e) {
+				throw new RuntimeException("Something went wrong while evaluating: " + this.name, e);
+			}
+			if (nodes.getLength() == 0) {
+				throw new RuntimeException("No such attribute: " + this.name);
+			}
+			for (int i = 0; i < nodes.getLength(); i++) {
+				if (!(nodes.item(i) instanceof Attr)) {
+					throw new RuntimeException(this.name + ": not an attribute: " + nodes.item(i).getNodeName());
+				}
+				((Attr) nodes.item(i)).setValue(value);
+			}
+		}
+
+	}
+
+	/**
+	 * The dimensions of the sweep.
+	 */
+	final private List<Dimension> dimensions = new ArrayList<>();
+
+	/**
+	 * The design of the sweep: {@code grid}, {@code random} or {@code lhs}.
+	 */
+	final private String design;
+
+	/**
+	 * The last period to be simulated.
+	 */
+	final private int end;
+
+	/**
+	 * The file of the scenario.
+	 */
+	final private File file;
+
+	/**
+	 * The outputs of the sweep: the names of the data to be collected, with
+	 * their expression (or {@code null} for existing public data).
+	 */
+	final private Map<String, String> outputs = new LinkedHashMap<>();
+
+	/**
+	 * The number of runs (random and lhs designs).
+	 */
+	final private int runs;
+
+	/**
+	 * The scenario.
+	 */
+	final private Document scenario;
+
+	/**
+	 * The seed of the sampling.
+	 */
+	final private long seed;
+
+	/**
+	 * The maximum number of simulations running at once.
+	 */
+	final private int threads;
+
+	/**
+	 * Creates a new sweep.
+	 *
+	 * @param params
+	 *            the description of the sweep.
+	 * @param sweepFile
+	 *            the file that contains the description of the sweep (used
+	 *            to resolve the path of the scenario).
+	 */
+	public ParameterSweep(final Parameters params, final File sweepFile) {
+		if (!params.getName().equals("sweep")) {
+			throw new RuntimeException("Bad element: " + params.getName());
+		}
+		if (params.getAttribute("scenario").isEmpty()) {
+			throw new RuntimeException("sweep: missing attribute: scenario");
+		}
+		this.file = new File(sweepFile.getAbsoluteFile().getParentFile(), params.getAttribute("scenario"));
+		this.scenario = SimulationPool.parse(this.file);
+		this.end = params.getIntAttribute("end");
+		this.design = params.hasAttribute("design") ? params.getAttribute("design") : "grid";
+		this.runs = params.hasAttribute("runs") ? params.getIntAttribute("runs") : 0;
+		this.seed = params.hasAttribute("seed") ? params.getIntAttribute("seed") : 0;
+		this.threads = params.hasAttribute("threads") ? params.getIntAttribute("threads")
+				: Runtime.getRuntime().availableProcessors();
+		for (final Parameters param : params.getAll("parameter")) {
+			this.dimensions.add(new Dimension(param));
+		}
+		for (final Parameters output : params.getAll("output")) {
+			final String text = output.getText();
+			this.outputs.put(output.getAttribute("name"), text.isEmpty() ? null : text);
+		}
+		final List<String> publicData = SimulationPool.getPublicDataNames(this.scenario);
+		for (final Map.Entry<String, String> output : this.outputs.entrySet()) {
+			final boolean found = publicData.contains(output.getKey());
+			if (output.getValue() == null && !found) {
+				throw new RuntimeException("output: no such public data: " + output.getKey());
+			}
+			if (output.getValue() != null && found) {
+				throw new RuntimeException("output: public data already defined: " + output.getKey());
+			}
+		}
+		if (!this.design.equals("grid") && this.runs < 1) {
+			throw new RuntimeException("sweep: missing or bad attribute: runs");
+		}
+	}
+
+	/**
+	 * Returns the values of each run of the sweep.
+	 *
+	 * @return a list of rows, each row containing the value of each
+	 *         dimension.
+	 */
+	public List<String[]> getDesign() {
+		final int size = this.dimensions.size();
+		final List<String[]> result = new ArrayList<>();
+		final Random random = new RandomStreams(this.seed).getStream("sweep/" + this.design);
+		switch (this.design) {
+		case "grid":
+			final int[] steps = new int[size];
+			while (true) {
+				final String[] row = new String[size];
+				for (int i = 0; i < size; i++) {
+					row[i] = this.dimensions.get(i).getStep(steps[i]);
+				}
+				result.add(row);
+				int i = 0;
+				while (i < size && ++steps[i] == this.dimensions.get(i).steps) {
+					steps[i] = 0;
+					i++;
+				}
+				if (i == size) {
+					break;
+				}
+			}
+			break;
+		case "random":
+			for (int k = 0; k < this.runs; k++) {
+				final String[] row = new String[size];
+				for (int i = 0; i < size; i++) {
+					row[i] = this.dimensions.get(i).getValue(random.nextDouble());
+				}
+				result.add(row);
+			}
+			break;
+		case "lhs":
+			for (int k = 0; k < this.runs; k++) {
+				result.add(new String[size]);
+			}
+			for (int i = 0; i < size; i++) {
+				// One random permutation of the strata by dimension.
+				final int[] strata = new int[this.runs];
+				for (int k = 0; k < this.runs; k++) {
+					strata[k] = k;
+				}
+				for (int k = this.runs - 1; k > 0; k--) {
+					final int j = random.nextInt(k + 1);
+					final int tmp = strata[k];
+					strata[k] = strata[j];
+					strata[j] = tmp;
+				}
+				for (int k = 0; k < this.runs; k++) {
+					final double x = (strata[k] + random.nextDouble()) / this.runs;
+					result.get(k)[i] = this.dimensions.get(i).getValue(x);
+				}
+			}
+			break;
+		default:
+			throw new RuntimeException("Unknown design: " + this.design);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the variant of the scenario for the specified values.
+	 *
+	 * @param row
+	 *            the value of each dimension.
+	 * @return a new scenario.
+	 */
+	public Document getVariant(final String[] row) {
+		final Document result = (Document) this.scenario.cloneNode(true);
+		for (int i = 0; i < row.length; i++) {
+			this.dimensions.get(i).set(result, row[i]);
+		}
+
+		// The new outputs are added to the public data of the scenario.
+
+		final Map<String, String> expressions = new LinkedHashMap<>();
+		for (final Map.Entry<String, String> output : this.outputs.entrySet()) {
+			if (output.getValue() != null) {
+				expressions.put(output.getKey(), output.getValue());
+			}
+		}
+		SimulationPool.addPublicData(result, expressions);
+		return result;
+	}
+
+	/**
+	 * Runs the sweep and prints the table of the results, one tab-separated
+	 * row by run, into the specified stream.
+	 *
+	 * @param out
+	 *            the output stream.
+	 * @return {@code true} if all the runs completed, {@code false}
+	 *         otherwise.
+	 */
+	public boolean run(final PrintStream out) {
+		final List<String[]> rows = this.getDesign();
+		final SimulationPool pool = new SimulationPool(this.threads);
+		final List<Future<SimulationPool.Result>> futures = new ArrayList<>(rows.size());
+		for (final String[] row : rows) {
+			futures.add(pool.submit(this.getVariant(row), this.file, this.end, null));
+		}
+		pool.shutdown();
+
+		final StringBuilder header = new StringBuilder("run");
+		for (final Dimension dimension : this.dimensions) {
+			header.append('\t').append(dimension.name);
+		}
+		header.append("\tcompleted\tperiods\tperiodsPerSecond");
+		for (final String output : this.outputs.keySet()) {
+			header.append('\t').append(output);
+		}
+		out.println(header);
+
+		boolean completed = true;
+		for (int k = 0; k < rows.size(); k++) {
+			final SimulationPool.Result result;
+			try {
+				result = futures.get(k).get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException("Something went wrong while running the sweep.", e);
+			}
+			final StringBuilder line = new StringBuilder().append(k);
+			for (final String value : rows.get(k)) {
+				line.append('\t').append(value);
+			}
+			line.append('\t').append(result.isCompleted());
+			line.append('\t').append(result.getPeriods());
+			line.append('\t').append(result.getPeriodsPerSecond());
+			for (final String output : this.outputs.keySet()) {
+				line.append('\t').append(result.getPublicData().get(output));
+			}
+			out.println(line);
+			completed &= result.isCompleted();
+		}
+		return completed;
+	}
+
+}
@@ -0,0 +1,541 @@
+package jamel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import jamel.util.Parameters;
+import jamel.util.PeriodListener;
+import jamel.util.Simulation;
+
+/**
+ * Runs several simulations at once, inside one JVM, on a bounded pool of
+ * threads.
+ *
+ * Each run is fully isolated: it has its own copy of the scenario, and its own
+ * simulation (with its own random and its own expression factory), created
+ * through the {@code className} attribute of the scenario. The runs are
+ * headless: the {@code <gui>} of the scenario is ignored. The class of the
+ * simulation must support this batch mode (see
+ * {@link Simulation#isBatchable()}), otherwise the run fails.
+ *
+ * The number of runs in flight (submitted, and not completed yet) is bounded
+ * by the number of threads: a submission waits for a run to complete, so that
+ * the copies of the scenarios are not all made at once.
+ */
+public class SimulationPool {
+
+	/**
+	 * The result of a run.
+	 */
+	public static class Result {
+
+		/**
+		 * {@code true} if the simulation ran to its end.
+		 */
+		final private boolean completed;
+
+		/**
+		 * The exception that stopped the simulation, or {@code null}.
+		 */
+		final private Exception error;
+
+		/**
+		 * The number of periods simulated.
+		 */
+		final private int periods;
+
+		/**
+		 * The final values of the public data, by name.
+		 */
+		final private Map<String, Double> publicData;
+
+		/**
+		 * The random seed of the run.
+		 */
+		final private String randomSeed;
+
+		/**
+		 * The scenario file.
+		 */
+		final private File scenario;
+
+		/**
+		 * The wall time of the run, in nanoseconds.
+		 */
+		final private long wallTime;
+
+		/**
+		 * Creates a new result.
+		 *
+		 * @param scenario
+		 *            the scenario file.
+		 * @param randomSeed
+		 *            the random seed of the run.
+		 * @param periods
+		 *            the number of periods simulated.
+		 * @param wallTime
+		 *            the wall time of the run, in nanoseconds.
+		 * @param publicData
+		 *            the final values of the public data.
+		 * @param error
+		 *            the exception that stopped the simulation, or
+		 *            {@code null}.
+		 */
+		private Result(final File scenario, final String randomSeed, final int periods, final long wallTime,
+				final Map<String, Double> publicData, final Exception error) {
+			this.scenario = scenario;
+			this.randomSeed = randomSeed;
+			this.periods = periods;
+			this.wallTime = wallTime;
+			this.publicData = Collections.unmodifiableMap(publicData);
+			this.error = error;
+			this.completed = (error == null);
+		}
+
+		/**
+		 * Returns the exception that stopped the simulation.
+		 *
+		 * @return the exception that stopped the simulation, or {@code null}
+		 *         if the simulation ran to its end.
+		 */
+		public Exception getError() {
+			return this.error;
+		}
+
+		/**
+		 * Returns the number of periods simulated.
+		 *
+		 * @return the number of periods simulated.
+		 */
+		public int getPeriods() {
+			return this.periods;
+		}
+
+		/**
+		 * Returns the number of periods simulated by second.
+		 *
+		 * @return the number of periods simulated by second.
+		 */
+		public double getPeriodsPerSecond() {
+			return (this.wallTime > 0) ? this.periods * 1e9 / this.wallTime : Double.NaN;
+		}
+
+		/**
+		 * Returns the final values of the public data, by name.
+		 *
+		 * @return the final values of the public data.
+		 */
+		public Map<String, Double> getPublicData() {
+			return this.publicData;
+		}
+
+		/**
+		 * Returns the random seed of the run.
+		 *
+		 * @return the random seed of the run.
+		 */
+		public String getRandomSeed() {
+			return this.randomSeed;
+		}
+
+		/**
+		 * Returns the scenario file.
+		 *
+		 * @return the scenario file.
+		 */
+		public File getScenario() {
+			return this.scenario;
+		}
+
+		/**
+		 * Returns the wall time of the run, in milliseconds.
+		 *
+		 * @return the wall time of the run, in milliseconds.
+		 */
+		public double getWallTime() {
+			return this.wallTime / 1000000.;
+		}
+
+		/**
+		 * Returns the wall time by period, in milliseconds.
+		 *
+		 * @return the wall time by period, in milliseconds.
+		 */
+		public double getWallTimePerPeriod() {
+			return (this.periods > 0) ? this.getWallTime() / this.periods : Double.NaN;
+		}
+
+		/**
+		 * Returns {@code true} if the simulation ran to its end.
+		 *
+		 * @return {@code true} if the simulation ran to its end.
+		 */
+		public boolean isCompleted() {
+			return this.completed;
+		}
+
+		/**
+		 * Returns a summary of this result, one {@code key=value} entry by
+		 * line.
+		 */
+		@Override
+		public String toString() {
+			final StringBuilder result = new StringBuilder();
+			final String eol = System.lineSeparator();
+			result.append("scenario=").append(this.scenario.getPath()).append(eol);
+			result.append("randomSeed=").append(this.randomSeed).append(eol);
+			result.append("completed=").append(this.completed).append(eol);
+			result.append("periods=").append(this.periods).append(eol);
+			result.append("wallTime.ms=").append(this.getWallTime()).append(eol);
+			result.append("periodsPerSecond=").append(this.getPeriodsPerSecond()).append(eol);
+			result.append("wallTimePerPeriod.ms=").append(this.getWallTimePerPeriod()).append(eol);
+			for (final Map.Entry<String, Double> entry : this.publicData.entrySet()) {
+				result.append("public.").append(entry.getKey()).append("=").append(entry.getValue()).append(eol);
+			}
+			return result.toString();
+		}
+
+	}
+
+	/**
+	 * Adds the specified event to the events of the specified scenario.
+	 *
+	 * The event is appended as a separate {@code <when>} element, after the
+	 * events already declared, so that its actions are executed after theirs
+	 * and are never subject to their {@code every} or {@code condition}
+	 * attributes.
+	 *
+	 * @param scenario
+	 *            the scenario.
+	 * @param when
+	 *            the event to be added (a {@code <when>} element that belongs
+	 *            to the scenario document).
+	 */
+	static void addEvent(final Document scenario, final Element when) {
+		final Element root = scenario.getDocumentElement();
+		Element eventsTag = null;
+		for (int i = 0; i < root.getChildNodes().getLength(); i++) {
+			if (root.getChildNodes().item(i) instanceof Element
+					&& ((Element) root.getChildNodes().item(i)).getTagName().equals("events")) {
+				eventsTag = (Element) root.getChildNodes().item(i);
+			}
+		}
+		if (eventsTag == null) {
+			eventsTag = scenario.createElement("events");
+			root.appendChild(eventsTag);
+		}
+		eventsTag.appendChild(when);
+	}
+
+	/**
+	 * Adds the specified expressions to the public data of the specified
+	 * scenario.
+	 *
+	 * @param scenario
+	 *            the scenario.
+	 * @param expressions
+	 *            the expressions to be added, by name.
+	 */
+	static void addPublicData(final Document scenario, final Map<String, String> expressions) {
+		final Element root = scenario.getDocumentElement();
+		Element publicTag = null;
+		for (int i = 0; i < root.getChildNodes().getLength(); i++) {
+			if (root.getChildNodes().item(i) instanceof Element
+					&& ((Element) root.getChildNodes().item(i)).getTagName().equals("public")) {
+				publicTag = (Element) root.getChildNodes().item(i);
+			}
+		}
+		for (final Map.Entry<String, String> expression : expressions.entrySet()) {
+			if (publicTag == null) {
+				publicTag = scenario.createElement("public");
+				root.appendChild(publicTag);
+			}
+			final Element data = scenario.createElement("data");
+			data.setAttribute("name", expression.getKey());
+			data.setTextContent(expression.getValue());
+			publicTag.appendChild(data);
+		}
+	}
+
+	/**
+	 * Returns the names of the public data of the specified scenario.
+	 *
+	 * @param scenario
+	 *            the scenario.
+	 * @return the names of the public data.
+	 */
+	static List<String> getPublicDataNames(final Document scenario) {
+		final List<String> result = new ArrayList<>();
+		final Parameters publicTag = new Parameters(scenario.getDocumentElement()).get("public");
+		if (publicTag != null) {
+			for (final Parameters data : publicTag.getAll("data")) {
+				result.add(data.getAttribute("name"));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a deep copy of the specified scenario, ready for a headless run.
+	 *
+	 * @param scenario
+	 *            the scenario to be copied.
+	 * @param end
+	 *            the last period to be simulated.
+	 * @param randomSeed
+	 *            the random seed, or {@code null} to keep the seed of the
+	 *            scenario.
+	 * @return a new scenario.
+	 */
+	private static Document prepare(final Document scenario, final int end, final Integer randomSeed) {
+		final Document result = (Document) scenario.cloneNode(true);
+		final Element root = result.getDocumentElement();
+		if (!root.getTagName().equals("simulation")) {
+			throw new RuntimeException("Bad root: " + root.getTagName());
+		}
+		final NodeList guiList = root.getElementsByTagName("gui");
+		while (guiList.getLength() > 0) {
+			final Node guiNode = guiList.item(0);
+			guiNode.getParentNode().removeChild(guiNode);
+		}
+		root.setAttribute("end", "" + end);
+		if (randomSeed != null) {
+			root.setAttribute("randomSeed", "" + randomSeed);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the specified scenario file.
+	 *
+	 * @param file
+	 *            the scenario file.
+	 * @return the scenario.
+	 */
+	static Document parse(final File file) {
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+		} catch (Exception e) {
+			throw new RuntimeException("Something went wrong while parsing the scenario file: " + file.getPath(), e);
+		}
+	}
+
+	/**
+	 * Runs the specified scenario in the current thread.
+	 *
+	 * The scenario is copied before the run: it is not modified.
+	 *
+	 * @param scenario
+	 *            the scenario.
+	 * @param file
+	 *            the scenario file (used to resolve relative paths).
+	 * @param end
+	 *            the last period to be simulated.
+	 * @param randomSeed
+	 *            the random seed, or {@code null} to keep the seed of the
+	 *            scenario.
+	 * @return the result of the run.
+	 */
+	public static Result run(final Document scenario, final File file, final int end, final Integer randomSeed) {
+		return runPrepared(prepare(scenario, end, randomSeed), file, null);
+	}
+
+	/**
+	 * Runs the specified scenario, already prepared, in the current thread.
+	 *
+	 * @param scenario
+	 *            the prepared scenario.
+	 * @param file
+	 *            the scenario file.
+	 * @param listener
+	 *            a listener notified at the end of each period, or
+	 *            {@code null}.
+	 * @return the result of the run.
+	 */
+	private static Result runPrepared(final Document scenario, final File file, final PeriodListener listener) {
+		final Parameters parameters = new Parameters(scenario.getDocumentElement());
+		final Simulation simulation = Jamel.newSimulation(parameters, file);
+		if (!simulation.isBatchable()) {
+			throw new RuntimeException("Not supported in batch mode: " + parameters.getAttribute("className"));
+		}
+		if (listener != null) {
+			simulation.addPeriodListener(listener);
+		}
+		final int first = simulation.getPeriod();
+		final long start = System.nanoTime();
+		Exception error = null;
+		try {
+			simulation.run();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			error = e;
+		}
+		final long wallTime = System.nanoTime() - start;
+		final Map<String, Double> publicData = new LinkedHashMap<>();
+		final Parameters publicTag = parameters.get("public");
+		if (publicTag != null) {
+			for (final Parameters data : publicTag.getAll("data")) {
+				final String name = data.getAttribute("name");
+				publicData.put(name, simulation.getPublicData(name));
+			}
+		}
+		return new Result(file, parameters.getAttribute("randomSeed"), simulation.getPeriod() - first, wallTime,
+				publicData, error);
+	}
+
+	/**
+	 * The executor that runs the simulations.
+	 */
+	final private ExecutorService executor;
+
+	/**
+	 * The permits of the runs in flight.
+	 */
+	final private Semaphore permits;
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param nThreads
+	 *            the maximum number of simulations running at once.
+	 */
+	public SimulationPool(final int nThreads) {
+		Jamel.setHeadless();
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadFactory threadFactory = (runnable) -> {
+			final Thread thread = new Thread(runnable, "jamel-simulation-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = Executors.newFixedThreadPool(nThreads, threadFactory);
+		this.permits = new Semaphore(nThreads);
+	}
+
+	/**
+	 * Executes the specified run, which holds a permit released when the run
+	 * completes (or is cancelled).
+	 *
+	 * @param run
+	 *            the run.
+	 * @return a future that gives access to the result of the run.
+	 */
+	private Future<Result> execute(final Callable<Result> run) {
+		final FutureTask<Result> future = new FutureTask<Result>(run) {
+			@Override
+			protected void done() {
+				SimulationPool.this.permits.release();
+			}
+		};
+		this.executor.execute(future);
+		return future;
+	}
+
+	/**
+	 * Initiates an orderly shutdown: the runs already submitted are executed,
+	 * but no new run will be accepted.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Submits the specified scenario.
+	 *
+	 * The scenario is copied at once: it can be modified (or submitted again)
+	 * as soon as this method returns. Waits until the number of runs in flight
+	 * is below the number of threads.
+	 *
+	 * @param scenario
+	 *            the scenario.
+	 * @param file
+	 *            the scenario file (used to resolve relative paths).
+	 * @param end
+	 *            the last period to be simulated.
+	 * @param randomSeed
+	 *            the random seed, or {@code null} to keep the seed of the
+	 *            scenario.
+	 * @return a future that gives access to the result of the run.
+	 */
+	public Future<Result> submit(final Document scenario, final File file, final int end,
+			final Integer randomSeed) {
+		return this.submit(scenario, file, end, randomSeed, null);
+	}
+
+	/**
+	 * Submits the specified scenario, with a listener notified at the end of
+	 * each period of the run.
+	 *
+	 * The scenario is copied at once: it can be modified (or submitted again)
+	 * as soon as this method returns. Waits until the number of runs in flight
+	 * is below the number of threads. The listener is notified from the thread
+	 * of the run.
+	 *
+	 * @param scenario
+	 *            the scenario.
+	 * @param file
+	 *            the scenario file (used to resolve relative paths).
+	 * @param end
+	 *            the last period to be simulated.
+	 * @param randomSeed
+	 *            the random seed, or {@code null} to keep the seed of the
+	 *            scenario.
+	 * @param listener
+	 *            the listener, or {@code null}.
+	 * @return a future that gives access to the result of the run.
+	 */
+	public Future<Result> submit(final Document scenario, final File file, final int end, final Integer randomSeed,
+			final PeriodListener listener) {
+		this.permits.acquireUninterruptibly();
+		try {
+			final Document prepared = prepare(scenario, end, randomSeed);
+			return this.execute(() -> runPrepared(prepared, file, listener));
+		} catch (RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Submits the specified scenario file.
+	 *
+	 * Waits until the number of runs in flight is below the number of threads.
+	 *
+	 * @param file
+	 *            the scenario file.
+	 * @param end
+	 *            the last period to be simulated.
+	 * @param randomSeed
+	 *            the random seed, or {@code null} to keep the seed of the
+	 *            scenario.
+	 * @return a future that gives access to the result of the run.
+	 */
+	public Future<Result> submit(final File file, final int end, final Integer randomSeed) {
+		this.permits.acquireUninterruptibly();
+		try {
+			return this.execute(() -> runPrepared(prepare(parse(file), end, randomSeed), file, null));
+		} catch (RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+}
@@ -1,6 +1,9 @@
 package jamel.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.jfree.data.xy.VectorDataItem;
@@ -16,6 +19,131 @@ import jamel.util.Simulation;
  */
 public class ExpressionFactory extends JamelObject {
 
+	/**
+	 * A query parsed into a tree, independent of any simulation.
+	 */
+	private static final class ParsedQuery {
+
+		/**
+		 * The parsed arguments.
+		 */
+		final ParsedQuery[] args;
+
+		/**
+		 * The cleaned up query.
+		 */
+		final String key;
+
+		/**
+		 * The kind of the query: an operator ({@code +}, {@code <=}...), a
+		 * function ({@code isEqual}, {@code isNaN}, {@code val},
+		 * {@code opposite}), {@code numeric}, {@code parameter}, or the name
+		 * of a variable of the simulation ({@code t}, {@code speed}...).
+		 */
+		final String kind;
+
+		/**
+		 * The value of a numeric query.
+		 */
+		final double number;
+
+		/**
+		 * The string arguments (the names of the sector, of the agent and
+		 * the data keys of a {@code val}, the sector and the key of a
+		 * {@code parameter}).
+		 */
+		final String[] strings;
+
+		/**
+		 * Creates a numeric query.
+		 * 
+		 * @param key
+		 *            the cleaned up query.
+		 * @param number
+		 *            the value.
+		 */
+		ParsedQuery(final String key, final double number) {
+			this.key = key;
+			this.kind = "numeric";
+			this.args = null;
+			this.strings = null;
+			this.number = number;
+		}
+
+		/**
+		 * Creates a query with parsed arguments.
+		 * 
+		 * @param key
+		 *            the cleaned up query.
+		 * @param kind
+		 *            the kind of the query.
+		 * @param args
+		 *            the parsed arguments.
+		 */
+		ParsedQuery(final String key, final String kind, final ParsedQuery... args) {
+			this.key = key;
+			this.kind = kind;
+			this.args = args;
+			this.strings = null;
+			this.number = Double.NaN;
+		}
+
+		/**
+		 * Creates a query with string arguments.
+		 * 
+		 * @param key
+		 *            the cleaned up query.
+		 * @param kind
+		 *            the kind of the query.
+		 * @param strings
+		 *            the string arguments.
+		 */
+		ParsedQuery(final String key, final String kind, final String[] strings) {
+			this.key = key;
+			this.kind = kind;
+			this.args = null;
+			this.strings = strings;
+			this.number = Double.NaN;
+		}
+
+	}
+
+	/**
+	 * The pattern of the {@code isEqual} function.
+	 */
+	private static final Pattern isEqualPattern = Pattern.compile("isEqual[\\(].*[\\)]");
+
+	/**
+	 * The pattern of the {@code isNaN} function.
+	 */
+	private static final Pattern isNaNPattern = Pattern.compile("isNaN[\\(].*[\\)]");
+
+	/**
+	 * The pattern of the numbers.
+	 */
+	private static final Pattern numericPattern = Pattern.compile("\\d.*");
+
+	/**
+	 * The pattern of the parameters ({@code sector.key}).
+	 */
+	private static final Pattern parameterPattern = Pattern.compile(".*[\\.].*");
+
+	/**
+	 * The parsed queries, by string (kept in memory only: they are parsed
+	 * again at each launch).
+	 */
+	private static final Map<String, ParsedQuery> parsedQueries = new ConcurrentHashMap<>();
+
+	/**
+	 * The space characters, removed from the queries.
+	 */
+	private static final Pattern spaces = Pattern.compile("(\\p{javaSpaceChar}|\\r|\\n|\\t)");
+
+	/**
+	 * The pattern of the {@code val} function.
+	 */
+	private static final Pattern valPattern = Pattern.compile("val[\\(].*[\\)]");
+
 	/**
 	 * Returns a query cleaned from useless parentheses and spaces.
 	 * 
@@ -87,6 +215,62 @@ public class ExpressionFactory extends JamelObject {
 		return result;
 	}
 
+	/**
+	 * Returns the specified comparison.
+	 * 
+	 * @param arg1
+	 *            the left operand.
+	 * @param arg2
+	 *            the right operand.
+	 * @param operator
+	 *            the comparison operator ({@code <}, {@code <=}, {@code >} or
+	 *            {@code >=}).
+	 * @return <code>1</code> if the comparison holds, <code>0</code>
+	 *         otherwise, <code>null</code> if one of the values is null.
+	 */
+	private static Expression getComparison(final Expression arg1, final Expression arg2, final String operator) {
+		ArgChecks.nullNotPermitted(arg1, "arg1");
+		ArgChecks.nullNotPermitted(arg2, "arg2");
+		final Expression result = new Expression() {
+
+			@Override
+			public Double getValue() {
+
+				final Double v1 = arg1.getValue();
+				final Double v2 = arg2.getValue();
+				if (v1 == null || v2 == null) {
+					return null;
+				}
+				final boolean holds;
+				switch (operator) {
+				case "<":
+					holds = v1 < v2;
+					break;
+				case "<=":
+					holds = v1 <= v2;
+					break;
+				case ">":
+					holds = v1 > v2;
+					break;
+				case ">=":
+					holds = v1 >= v2;
+					break;
+				default:
+					throw new RuntimeException("Unexpected operator: " + operator);
+				}
+				return holds ? 1. : 0.;
+
+			}
+
+			@Override
+			public String toString() {
+				return "(" + arg1.toString() + " " + operator + " " + arg2.toString() + ")";
+			}
+
+		};
+		return result;
+	}
+
 	/**
 	 * Returns the specified division.
 	 * 
@@ -324,6 +508,36 @@ public class ExpressionFactory extends JamelObject {
 		return result;
 	}
 
+	/**
+	 * Returns an expression that tests whether the value of the specified
+	 * expression is not a number.
+	 * 
+	 * @param arg
+	 *            the expression to be tested.
+	 * @return <code>1</code> if the value of the expression is NaN,
+	 *         <code>0</code> otherwise, <code>null</code> if it is null.
+	 */
+	private static Expression getTestNaN(Expression arg) {
+		ArgChecks.nullNotPermitted(arg, "arg");
+		final Expression result = new Expression() {
+
+			@Override
+			public Double getValue() {
+
+				final Double v = arg.getValue();
+				return (v == null) ? null : (v.isNaN()) ? 1. : 0.;
+
+			}
+
+			@Override
+			public String toString() {
+				return "isNaN(" + arg.toString() + ")";
+			}
+
+		};
+		return result;
+	}
+
 	/**
 	 * Returns <code>true</code> if parentheses in the specified query are
 	 * balanced, <code>false</code> otherwise.
@@ -349,6 +563,174 @@ public class ExpressionFactory extends JamelObject {
 		return count == 0;
 	}
 
+	/**
+	 * Returns the specified query, parsed.
+	 * 
+	 * The parsed queries do not depend on any simulation: they are cached, by
+	 * their string, and shared by all the simulations of the JVM (eg. the runs
+	 * of a sweep). The cache is not saved: a new launch parses the queries
+	 * again, and the scenario itself (its sectors, its phases) is always read
+	 * from the XML.
+	 * 
+	 * @param query
+	 *            a string that describes an expression.
+	 * @return the parsed query.
+	 */
+	private static ParsedQuery parse(final String query) {
+		ParsedQuery result = parsedQueries.get(query);
+		if (result == null) {
+			try {
+				result = parseQuery(query);
+			} catch (Exception e) {
+				Jamel.println("Bad query: '" + query + "'");
+				throw new RuntimeException("Bad query: " + query, e);
+			}
+			parsedQueries.put(query, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the specified query.
+	 * 
+	 * @param query
+	 *            a string that describes an expression.
+	 * @return the parsed query.
+	 */
+	private static ParsedQuery parseQuery(final String query) {
+
+		final ParsedQuery result;
+
+		if (!isBalanced(query)) {
+			throw new RuntimeException("Not balanced: " + query);
+			// Comment traiter cet incident ?
+			// Il n'est pas dû à Jamel mais au scénario, il faut informer
+			// clairement l'utilisateur de l'endroit où il s'est planté.
+		}
+
+		final String key = cleanUp(spaces.matcher(query).replaceAll(""));
+
+		// The comparisons (<, <=, >, >=) have the lowest precedence.
+
+		String comparison = null;
+		Integer comparisonPosition = null;
+		{
+			int depth = 0;
+			for (int i = 0; i < key.length(); i++) {
+				final char c = key.charAt(i);
+				if (c == '(') {
+					depth++;
+				} else if (c == ')') {
+					depth--;
+				} else if (depth == 0 && (c == '<' || c == '>')) {
+					comparisonPosition = i;
+					comparison = (i + 1 < key.length() && key.charAt(i + 1) == '=') ? c + "=" : "" + c;
+					break;
+				}
+			}
+		}
+
+		Character operator = null;
+		Integer position = null;
+		int count = 0;
+
+		for (int i = 0; i < key.length(); i++) {
+
+			final char c = key.charAt(i);
+
+			if (c == '(') {
+				count++;
+			} else if (c == ')') {
+				count--;
+			}
+
+			else if (count == 0 && i > 0) {
+
+				// We are outside parentheses.
+				// Is this char an operator ?
+
+				if (c == '+') {
+					operator = c;
+					position = i;
+					break;
+				} else if (c == '-') {
+					final char previous = key.charAt(i - 1);
+					if (previous != '*' && previous != '/') {
+						operator = c;
+						position = i;
+						//break; -> BIG BUG ! Fixed 2018-02-17
+					}
+				} else if ((c == '*' || c == '/' || c == '%') && (operator==null)) {
+					operator = c;
+					position = i;
+				} 
+				
+			}
+		}
+
+		if (comparison != null) {
+			final ParsedQuery arg1 = parse(key.substring(0, comparisonPosition));
+			final ParsedQuery arg2 = parse(key.substring(comparisonPosition + comparison.length()));
+			result = new ParsedQuery(key, comparison, arg1, arg2);
+		}
+
+		else if (position != null) {
+			if (operator == null) {
+				throw new RuntimeException("Operator is null");
+			}
+			final ParsedQuery arg1 = parse(key.substring(0, position));
+			final ParsedQuery arg2 = parse(key.substring(position + 1));
+			result = new ParsedQuery(key, operator.toString(), arg1, arg2);
+		}
+
+		else if (key.startsWith("-")) {
+			result = new ParsedQuery(key, "opposite", parse(key.substring(1)));
+		}
+
+		else if (numericPattern.matcher(key).matches()) {
+			result = new ParsedQuery(key, Double.parseDouble(key));
+		}
+
+		else if (isEqualPattern.matcher(key).matches()) {
+			final String argString = key.substring(8, key.length() - 1);
+			final String[] args = split(argString);
+			if (args.length != 2) {
+				throw new RuntimeException("Bad number of parameters: " + key);
+			}
+			result = new ParsedQuery(key, "isEqual", parse(args[0]), parse(args[1]));
+		}
+
+		else if (isNaNPattern.matcher(key).matches()) {
+			result = new ParsedQuery(key, "isNaN", parse(key.substring(6, key.length() - 1)));
+		}
+
+		else if (valPattern.matcher(key).matches()) {
+			final String argString = key.substring(4, key.length() - 1);
+			final String[] split = argString.split(",", 2);
+			final String[] names = split[0].split("\\.");
+			final String[] args = split[1].split(",");
+			final String[] strings = new String[args.length + 2];
+			strings[0] = names[0];
+			strings[1] = (names.length == 2) ? names[1] : null;
+			System.arraycopy(args, 0, strings, 2, args.length);
+			result = new ParsedQuery(key, "val", strings);
+		}
+
+		else if (parameterPattern.matcher(key).matches()) {
+			result = new ParsedQuery(key, "parameter", key.split("\\.", 2));
+		}
+
+		else if (key.equals("t") || key.equals("speed") || key.equals("totalMemory") || key.equals("freeMemory")
+				|| key.equals("duration")) {
+			result = new ParsedQuery(key, key);
+		}
+
+		else {
+			throw new RuntimeException("Not yet implemented: \'" + key + "\'");
+		}
+		return result;
+	}
+
 	/**
 	 * Splits this string in two substrings around the first comma.
 	 * Commas within parentheses are ignored.
@@ -446,164 +828,109 @@ public class ExpressionFactory extends JamelObject {
 	/**
 	 * Returns the specified expression.
 	 * 
+	 * The query is parsed once (see {@link #parse(String)}) and the parsed
+	 * query is bound to the simulation of this factory.
+	 * 
 	 * @param query
 	 *            a string that describes the expression to be returned.
 	 * @return the specified expression.
 	 */
 	public Expression getExpression(final String query) {
+		return this.bind(parse(query));
+	}
 
+	/**
+	 * Returns an expression of the simulation for the specified parsed query.
+	 * 
+	 * @param query
+	 *            the parsed query.
+	 * @return the specified expression.
+	 */
+	private Expression bind(final ParsedQuery query) {
 		try {
-
 			final Expression result;
-
-			if (!isBalanced(query)) {
-				throw new RuntimeException("Not balanced: " + query);
-				// Comment traiter cet incident ?
-				// Il n'est pas dû à Jamel mais au scénario, il faut informer
-				// clairement l'utilisateur de l'endroit où il s'est planté.
-			}
-
-			final String key = cleanUp(query.replaceAll("(\\p{javaSpaceChar}|\\r|\\n|\\t)", ""));
-
-			Character operator = null;
-			Integer position = null;
-			int count = 0;
-
-			for (int i = 0; i < key.length(); i++) {
-
-				final char c = key.charAt(i);
-
-				if (c == '(') {
-					count++;
-				} else if (c == ')') {
-					count--;
-				}
-
-				else if (count == 0 && i > 0) {
-
-					// We are outside parentheses.
-					// Is this char an operator ?
-
-					if (c == '+') {
-						operator = c;
-						position = i;
-						break;
-					} else if (c == '-') {
-						final char previous = key.charAt(i - 1);
-						if (previous != '*' && previous != '/') {
-							operator = c;
-							position = i;
-							//break; -> BIG BUG ! Fixed 2018-02-17
-						}
-					} else if ((c == '*' || c == '/' || c == '%') && (operator==null)) {
-						operator = c;
-						position = i;
-					} 
-					
-				}
-			}
-
-			if (position != null) {
-				if (operator == null) {
-					throw new RuntimeException("Operator is null");
-				}
-				final Expression arg1 = getExpression(key.substring(0, position));
-				final Expression arg2 = getExpression(key.substring(position + 1));
-
-				switch (operator) {
-				case '+':
-					result = getAddition(arg1, arg2);
-					break;
-				case '-':
-					result = getSubtraction(arg1, arg2);
-					break;
-				case '*':
-					result = getMultiplication(arg1, arg2);
-					break;
-				case '/':
-					result = getDivision(arg1, arg2);
-					break;
-				case '%':
-					result = getModulo(arg1, arg2);
-					break;
-				default:
-					throw new RuntimeException("Unexpected operator: " + operator);
-				}
-
-			}
-
-			else if (key.startsWith("-")) {
-				result = getOpposite(getExpression(key.substring(1)));
-			}
-
-			else if (Pattern.matches("\\d.*", key)) {
-				result = getNumeric(Double.parseDouble(key));
-			}
-
-			else if (Pattern.matches("isEqual[\\(].*[\\)]", key)) {
-				final String argString = key.substring(8, key.length() - 1);
-				final String[] args = split(argString);
-				if (args.length != 2) {
-					throw new RuntimeException("Bad number of parameters: " + key);
-				}
-				result = getTestEqual(getExpression(args[0]), getExpression(args[1]));
-			}
-
-			else if (Pattern.matches("val[\\(].*[\\)]", key)) {
-				final String argString = key.substring(4, key.length() - 1);
-				final String[] split = argString.split(",", 2);
-				final Sector sector = this.getSimulation().getSector(split[0].split("\\.")[0]);
+			switch (query.kind) {
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				result = getComparison(this.bind(query.args[0]), this.bind(query.args[1]), query.kind);
+				break;
+			case "+":
+				result = getAddition(this.bind(query.args[0]), this.bind(query.args[1]));
+				break;
+			case "-":
+				result = getSubtraction(this.bind(query.args[0]), this.bind(query.args[1]));
+				break;
+			case "*":
+				result = getMultiplication(this.bind(query.args[0]), this.bind(query.args[1]));
+				break;
+			case "/":
+				result = getDivision(this.bind(query.args[0]), this.bind(query.args[1]));
+				break;
+			case "%":
+				result = getModulo(this.bind(query.args[0]), this.bind(query.args[1]));
+				break;
+			case "opposite":
+				result = getOpposite(this.bind(query.args[0]));
+				break;
+			case "numeric":
+				result = getNumeric(query.number);
+				break;
+			case "isEqual":
+				result = getTestEqual(this.bind(query.args[0]), this.bind(query.args[1]));
+				break;
+			case "isNaN":
+				result = getTestNaN(this.bind(query.args[0]));
+				break;
+			case "val": {
+				final Sector sector = this.getSimulation().getSector(query.strings[0]);
 				if (sector == null) {
-					throw new RuntimeException("Sector not found: " + split[0]);
+					throw new RuntimeException("Sector not found: " + query.strings[0]);
 				}
-				final String[] args = split[1].split(",");
-				if (split[0].split("\\.").length == 2) {
+				final String[] args = Arrays.copyOfRange(query.strings, 2, query.strings.length);
+				if (query.strings[1] != null) {
 					// on demande une valeur sur un agent particulier.
-					result = sector.getIndividualDataAccess(split[0].split("\\.")[1], args);
+					result = sector.getIndividualDataAccess(query.strings[1], args);
 				} else {
 					// on demande une opération d'agrégation sur l'ensemble
 					// des agents (somme des données par exemple)
 					result = sector.getDataAccess(args);
 				}
+				break;
 			}
-
-			else if (Pattern.matches(".*[\\.].*", key)) {
+			case "parameter": {
 				// Récupération d'un paramètre
-				final String[] split = key.split("\\.", 2);
-				final Sector sector = this.getSimulation().getSector(split[0]);
+				final Sector sector = this.getSimulation().getSector(query.strings[0]);
 				if (sector == null) {
-					throw new RuntimeException("Sector not found: \"" + split[0] + "\" in string: \"" + key + "\"");
+					throw new RuntimeException(
+							"Sector not found: \"" + query.strings[0] + "\" in string: \"" + query.key + "\"");
 				}
-				result = ExpressionFactory.getConstant(sector.getParameters().getDoubleValue(split[1]));
+				result = ExpressionFactory.getConstant(sector.getParameters().getDoubleValue(query.strings[1]));
+				break;
 			}
-
-			else if (key.equals("t")) {
+			case "t":
 				result = this.getSimulation().getTime();
-			}
-
-			else if (key.equals("speed")) {
+				break;
+			case "speed":
 				result = this.getSimulation().getSpeed();
-			}
-
-			else if (key.equals("totalMemory")) {
+				break;
+			case "totalMemory":
 				result = this.getSimulation().getTotalMemory();
-			}
-
-			else if (key.equals("freeMemory")) {
+				break;
+			case "freeMemory":
 				result = this.getSimulation().getFreeMemory();
-			}
-
-			else if (key.equals("duration")) {
+				break;
+			case "duration":
 				result = this.getSimulation().getDuration();
-			}
-
-			else {
-				throw new RuntimeException("Not yet implemented: \'" + key + "\'");
+				break;
+			default:
+				throw new RuntimeException("Unexpected query: \'" + query.kind + "\'");
 			}
 			return result;
 		} catch (Exception e) {
-			Jamel.println("Bad query: '" + query + "'");
-			throw new RuntimeException("Bad query: " + query, e);
+			Jamel.println("Bad query: '" + query.key + "'");
+			throw new RuntimeException("Bad query: " + query.key, e);
 		}
 	}
 
@@ -23,6 +23,7 @@ import jamel.data.ExpressionFactory;
 import jamel.gui.Gui;
 import jamel.util.BasicTimer;
 import jamel.util.Parameters;
+import jamel.util.PeriodListener;
 import jamel.util.Phase;
 import jamel.util.Sector;
 import jamel.util.Simulation;
@@ -208,6 +209,11 @@ public class BasicSimulation implements Simulation {
 	 */
 	private boolean pause = true;
 
+	/**
+	 * The listeners notified at the end of each period.
+	 */
+	final private List<PeriodListener> periodListeners = new LinkedList<>();
+
 	/**
 	 * The list of the phases of the period.
 	 */
@@ -565,6 +571,10 @@ public class BasicSimulation implements Simulation {
 			this.publicValues.put(key, value);
 		}
 
+		for (final PeriodListener listener : this.periodListeners) {
+			listener.periodClosed(this);
+		}
+
 		final boolean refereshGui = this.timer.getPeriod() % this.refresh == 0;
 		if (refereshGui) {
 			this.gui.refresh();
@@ -578,6 +588,11 @@ public class BasicSimulation implements Simulation {
 		this.timer.next();
 	}
 
+	@Override
+	public void addPeriodListener(final PeriodListener listener) {
+		this.periodListeners.add(listener);
+	}
+
 	@Override
 	public void displayErrorMessage(String title, String message) {
 		if (this.gui != null) {
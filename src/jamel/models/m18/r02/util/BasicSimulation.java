@@ -25,6 +25,7 @@ import jamel.data.ExpressionFactory;
 import jamel.gui.Gui;
 import jamel.util.BasicTimer;
 import jamel.util.Parameters;
+import jamel.util.PeriodListener;
 import jamel.util.Phase;
 import jamel.util.Sector;
 import jamel.util.Simulation;
@@ -210,6 +211,11 @@ public class BasicSimulation implements Simulation {
 	 */
 	private boolean pause = true;
 
+	/**
+	 * The listeners notified at the end of each period.
+	 */
+	final private List<PeriodListener> periodListeners = new LinkedList<>();
+
 	/**
 	 * The list of the phases of the period.
 	 */
@@ -580,6 +586,10 @@ public class BasicSimulation implements Simulation {
 			this.publicValues.put(key, value);
 		}
 
+		for (final PeriodListener listener : this.periodListeners) {
+			listener.periodClosed(this);
+		}
+
 		final boolean refereshGui = this.timer.getPeriod() % this.refresh == 0;
 		if (refereshGui) {
 			this.gui.refresh();
@@ -593,6 +603,11 @@ public class BasicSimulation implements Simulation {
 		this.timer.next();
 	}
 
+	@Override
+	public void addPeriodListener(final PeriodListener listener) {
+		this.periodListeners.add(listener);
+	}
+
 	@Override
 	public void displayErrorMessage(String title, String message) {
 		if (this.gui != null) {
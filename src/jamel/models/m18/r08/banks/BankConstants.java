@@ -1,11 +1,15 @@
 package jamel.models.m18.r08.banks;
 
+import java.io.Serializable;
+
 import jamel.util.Parameters;
 
 /**
  * A class to parse and store the constant parameters of the bank.
  */
-class BankConstants {
+class BankConstants implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The capital target ratio.
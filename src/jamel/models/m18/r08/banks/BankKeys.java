@@ -17,7 +17,7 @@ class BankKeys extends AbstractDataKeys {
 	 * 
 	 * @return an instance of {@code BasicShareholderKeys}.
 	 */
-	static BankKeys getInstance() {
+	static synchronized BankKeys getInstance() {
 		if (instance == null) {
 			instance = new BankKeys();
 		}
@@ -14,10 +14,14 @@ package jamel.models.m18.r08.banks;
  * main banking objects (accounts, loans, deposits...)
  */
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import jamel.Jamel;
@@ -26,6 +30,8 @@ import jamel.models.m18.r08.data.AgentDataset;
 import jamel.models.m18.r08.data.BasicAgentDataset;
 import jamel.models.m18.r08.data.BasicPeriodDataset;
 import jamel.models.m18.r08.data.PeriodDataset;
+import jamel.models.m18.r08.jfr.DebtRecoveryEvent;
+import jamel.models.m18.r08.jfr.DividendEvent;
 import jamel.models.m18.r08.roles.Bank;
 import jamel.models.m18.r08.roles.Shareholder;
 import jamel.models.m18.r08.util.Account;
@@ -35,6 +41,7 @@ import jamel.models.m18.r08.util.BasicAmount;
 import jamel.models.m18.r08.util.BasicOwnership;
 import jamel.models.m18.r08.util.Cheque;
 import jamel.models.m18.r08.util.Equity;
+import jamel.models.m18.r08.util.IdentifiedAgent;
 import jamel.util.Agent;
 import jamel.util.ArgChecks;
 import jamel.util.JamelObject;
@@ -44,13 +51,17 @@ import jamel.util.Sector;
 /**
  * A basic bank with 'derivative control' when updating interest rate.
  */
-public class BasicBank extends JamelObject implements AccountHolder, Bank {
+public class BasicBank extends JamelObject implements AccountHolder, Bank, IdentifiedAgent, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * An abstract cheque.
 	 */
 	private abstract class AbstractCheque extends Amount implements Cheque {
 
+		private static final long serialVersionUID = 1L;
+
 		/**
 		 * The issue date of this cheque.
 		 */
@@ -93,6 +104,8 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 	 */
 	private class BankCheque extends AbstractCheque {
 
+		private static final long serialVersionUID = 1L;
+
 		/**
 		 * Should not be called.
 		 */
@@ -118,6 +131,8 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 	 */
 	private class BankOwnership extends BasicOwnership {
 
+		private static final long serialVersionUID = 1L;
+
 		/**
 		 * Creates a new ownership for this bank.
 		 */
@@ -153,18 +168,24 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 	/**
 	 * A basic implementation of {@code Account}.
 	 */
-	private class BasicAccount implements Account {
+	private class BasicAccount implements Account, Serializable {
+
+		private static final long serialVersionUID = 1L;
 
 		/**
 		 * The debt.
 		 */
-		private class Debt {
+		private class Debt implements Serializable {
+
+			private static final long serialVersionUID = 1L;
 
 			/**
 			 * A basic implementation of {@code Loan}.
 			 */
 			private class BasicLoan extends Amount implements Loan {
 
+				private static final long serialVersionUID = 1L;
+
 				/**
 				 * If the loan is amortizing.
 				 */
@@ -270,6 +291,8 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 			 */
 			private class OverdueDebt extends Amount implements Loan {
 
+				private static final long serialVersionUID = 1L;
+
 				/**
 				 * Adds a new amount of overdue debt.
 				 * The same amount is simultaneously credited to the related
@@ -507,11 +530,15 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		 */
 		private class Deposit extends Amount {
 
+			private static final long serialVersionUID = 1L;
+
 			/**
 			 * A basic cheque.
 			 */
 			private class BasicCheque extends AbstractCheque {
 
+				private static final long serialVersionUID = 1L;
+
 				/**
 				 * Clears the cheque
 				 */
@@ -758,6 +785,26 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 			this.debt.interests = 0;
 		}
 
+		@Override
+		public void terminate(Account heir) {
+			final long repayment = Math.min(this.getAmount(), this.getDebt());
+			if (repayment > 0) {
+				this.debt.cancel(repayment);
+				this.deposit.minus(repayment);
+			}
+			if (this.getDebt() > 0) {
+				this.cancelDebt(this.getDebt());
+			}
+			if (this.getAmount() > 0) {
+				if (heir == null) {
+					throw new RuntimeException("Not empty: " + this.holder.getName());
+				}
+				heir.deposit(this.issueCheque(heir.getAccountHolder(), this.getAmount()));
+			}
+			this.open = false;
+			BasicBank.this.accounts.remove(this);
+		}
+
 	}
 
 	/**
@@ -807,7 +854,7 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 	/**
 	 * The collection of accounts.
 	 */
-	private final List<BasicAccount> accounts = new ArrayList<>();
+	private final Set<BasicAccount> accounts = new LinkedHashSet<>();
 
 	/**
 	 * The bank cheque.
@@ -948,6 +995,22 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		this.agentDataset = new BasicAgentDataset(this);
 	}
 
+	/**
+	 * Reads this bank from a checkpoint, and attaches it to the simulation of
+	 * its sector.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.setSimulation(this.sector.getSimulation());
+	}
+
 	/**
 	 * For debugging purposes.
 	 */
@@ -989,6 +1052,11 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		// checkConsistency();
 		// ***
 
+		final DebtRecoveryEvent event = new DebtRecoveryEvent();
+		event.begin();
+		final int overdueDebtCount = this.overdueDebts.size();
+		final int loanCount = this.loans.size();
+
 		final ListIterator<Loan> it1 = this.overdueDebts.listIterator();
 		while (it1.hasNext()) {
 			final Loan overdueDebt = it1.next();
@@ -1023,6 +1091,19 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		this.periodDataset.put(keys.longTermDebt, longTermDebt);
 		this.periodDataset.put(keys.shortTermDebt, shortTermDebt);
 		// checkConsistency();
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.period = getPeriod();
+			event.sector = this.sector.getName();
+			event.bank = this.getName();
+			event.overdueDebts = overdueDebtCount;
+			event.loans = loanCount;
+			event.loansRepaid = loanCount - this.loans.size();
+			event.longTermDebt = longTermDebt;
+			event.shortTermDebt = shortTermDebt;
+			event.commit();
+		}
 	}
 
 	/**
@@ -1046,6 +1127,8 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		if (this.ownership.isEmpty()) {
 			throw new RuntimeException("No owners.");
 		}
+		final DividendEvent event = new DividendEvent();
+		event.begin();
 		final long assets = this.outstandingDebtAmount.getAmount() + this.overdueDebtAmount.getAmount();
 		final long liabilities = this.depositsAmount.getAmount();
 		final long capital = assets - liabilities;
@@ -1053,6 +1136,15 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		final long capitalExcess = Math.max(capital - capitalTarget, 0);
 		final long dividends = this.ownership.payDividends(capitalExcess);
 		this.periodDataset.put(keys.dividends, dividends);
+		event.end();
+		if (event.shouldCommit()) {
+			event.period = getPeriod();
+			event.sector = this.sector.getName();
+			event.bank = this.getName();
+			event.capital = capital;
+			event.dividends = dividends;
+			event.commit();
+		}
 	}
 
 	/**
@@ -1163,6 +1255,11 @@ public class BasicBank extends JamelObject implements AccountHolder, Bank {
 		return this.agentDataset.getData(dataIndex, t);
 	}
 
+	@Override
+	public int getID() {
+		return this.id;
+	}
+
 	@Override
 	public String getName() {
 		return "Bank " + this.id;
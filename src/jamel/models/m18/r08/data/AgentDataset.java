@@ -54,6 +54,14 @@ public interface AgentDataset {
 	 */
 	void put(PeriodDataset periodDataset);
 
+	/**
+	 * Skips the recording of the current period.
+	 * 
+	 * The history of this dataset is discarded, and cannot be read until a
+	 * period dataset is added again.
+	 */
+	void skip();
+
 	/**
 	 * Returns the sum the specified subset of data.
 	 * 
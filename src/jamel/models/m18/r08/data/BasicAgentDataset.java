@@ -1,5 +1,6 @@
 package jamel.models.m18.r08.data;
 
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.LinkedList;
@@ -12,13 +13,24 @@ import jamel.util.Simulation;
 /**
  * A basic implementation of {@code AgentDataset}.
  */
-public class BasicAgentDataset implements AgentDataset {
+public class BasicAgentDataset implements AgentDataset, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * TODO 24 should be a parameter
 	 */
 	private static final int maxSize = 25;
 
+	/**
+	 * Returns the number of periods kept in the history of the datasets.
+	 * 
+	 * @return the number of periods kept in the history of the datasets.
+	 */
+	public static int getMaxSize() {
+		return maxSize;
+	}
+
 	/**
 	 * The owner agent.
 	 */
@@ -44,6 +56,12 @@ public class BasicAgentDataset implements AgentDataset {
 	 */
 	final private Simulation simulation;
 
+	/**
+	 * A flag that indicates whether the recording of the current period has
+	 * been skipped.
+	 */
+	private boolean skipped = false;
+
 	/**
 	 * Creates a new dataset for this agent.
 	 * 
@@ -62,8 +80,20 @@ public class BasicAgentDataset implements AgentDataset {
 		}
 	}
 
+	/**
+	 * Throws an exception if the recording of the current period has been
+	 * skipped.
+	 */
+	private void checkRecorded() {
+		if (this.skipped) {
+			throw new IllegalStateException(
+					"The data of " + this.agent.getName() + " are not recorded during the warm-up.");
+		}
+	}
+
 	@Override
 	public double average(int dataKey, int laps) {
+		this.checkRecorded();
 		if (laps < 0 || laps > maxSize) {
 			throw new RuntimeException("Bad value: " + laps);
 		}
@@ -109,6 +139,7 @@ public class BasicAgentDataset implements AgentDataset {
 	 */
 	@Override
 	public Double getData(final int index, final int t) {
+		this.checkRecorded();
 		final Double result;
 		if (lastRecordPeriod == null) {
 			result = null;
@@ -140,6 +171,7 @@ public class BasicAgentDataset implements AgentDataset {
 
 	@Override
 	public void put(PeriodDataset periodDataset) {
+		this.skipped = false;
 		if (this.lastRecordPeriod == null) {
 			this.lastRecordPeriod = this.simulation.getPeriod();
 		} else {
@@ -161,8 +193,16 @@ public class BasicAgentDataset implements AgentDataset {
 		}
 	}
 
+	@Override
+	public void skip() {
+		this.skipped = true;
+		this.data.clear();
+		this.lastRecordPeriod = null;
+	}
+
 	@Override
 	public double sum(int dataKey, int laps) {
+		this.checkRecorded();
 		if (laps < 0 || laps > maxSize) {
 			throw new RuntimeException("Bad value: " + laps);
 		}
@@ -1,5 +1,6 @@
 package jamel.models.m18.r08.data;
 
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -10,7 +11,9 @@ import jamel.util.Agent;
 /**
  * An implementation of {@code Dataset} based on an array of {@code Double}.
  */
-public class BasicPeriodDataset implements PeriodDataset {
+public class BasicPeriodDataset implements PeriodDataset, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The agent.
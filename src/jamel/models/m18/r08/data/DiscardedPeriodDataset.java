@@ -0,0 +1,42 @@
+package jamel.models.m18.r08.data;
+
+/**
+ * A period dataset that discards its data.
+ * 
+ * Used by the agents whose data are not recorded during the warm-up of the
+ * simulation.
+ */
+public final class DiscardedPeriodDataset implements PeriodDataset {
+
+	/**
+	 * The unique instance.
+	 */
+	public static final DiscardedPeriodDataset INSTANCE = new DiscardedPeriodDataset();
+
+	/**
+	 * Use {@link #INSTANCE}.
+	 */
+	private DiscardedPeriodDataset() {
+	}
+
+	@Override
+	public Double get(int index) {
+		return null;
+	}
+
+	@Override
+	public Double get(String key) {
+		return null;
+	}
+
+	@Override
+	public int getPeriod() {
+		throw new UnsupportedOperationException("Discarded dataset");
+	}
+
+	@Override
+	public void put(int index, Number value) {
+		// Discarded.
+	}
+
+}
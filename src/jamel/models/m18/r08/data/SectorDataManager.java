@@ -3,6 +3,8 @@ package jamel.models.m18.r08.data;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -16,6 +18,7 @@ import jamel.data.DataKeys;
 import jamel.data.DynamicSeries;
 import jamel.data.Expression;
 import jamel.models.m18.r08.util.BasicSector;
+import jamel.models.m18.r08.util.IdentifiedAgent;
 import jamel.util.Agent;
 import jamel.util.JamelObject;
 
@@ -173,7 +176,13 @@ public class SectorDataManager extends JamelObject {
 	/**
 	 * The list of the agents.
 	 */
-	final private List<Agent> agents = new ArrayList<>();
+	final private List<IdentifiedAgent> agents = new ArrayList<>();
+
+	/**
+	 * A flag that indicates whether the list of the agents has changed since
+	 * the last publication.
+	 */
+	private boolean changed = false;
 
 	/**
 	 * The cache of the results.
@@ -190,6 +199,23 @@ public class SectorDataManager extends JamelObject {
 	 */
 	final private Map<String, Expression> expressions = new HashMap<>();
 
+	/**
+	 * The positions of the agents in the list of the agents, by ID ({@code -1}
+	 * if the ID is not used).
+	 */
+	private int[] positions = new int[0];
+
+	/**
+	 * The agents of the last closed period, in the order in which their data
+	 * are aggregated (an immutable snapshot of the list of the agents).
+	 */
+	private volatile Agent[] published = new Agent[0];
+
+	/**
+	 * The agents of the last closed period, by ID.
+	 */
+	private volatile Agent[] publishedByID = new Agent[0];
+
 	/**
 	 * The parent sector.
 	 */
@@ -203,11 +229,11 @@ public class SectorDataManager extends JamelObject {
 	 * @param sector
 	 *            the parent sector.
 	 */
-	public SectorDataManager(List<? extends Agent> agents, BasicSector sector) {
+	public SectorDataManager(List<? extends IdentifiedAgent> agents, BasicSector sector) {
 		super(sector.getSimulation());
 		this.sector = sector;
 		this.dataKeys = getDataKeys(this.sector.getAgentClass());
-		this.agents.addAll(agents);
+		this.put(agents);
 	}
 	
 	/**
@@ -439,8 +465,8 @@ public class SectorDataManager extends JamelObject {
 			Double sum = null;
 			Double min = null;
 			Double max = null;
-			for (int i = 0; i < this.agents.size(); i++) {
-				final Double val = this.agents.get(i).getData(dataIndex, t);
+			for (final Agent agent : this.published) {
+				final Double val = agent.getData(dataIndex, t);
 				if (val != null) {
 					if (sum == null) {
 						sum = val;
@@ -478,10 +504,35 @@ public class SectorDataManager extends JamelObject {
 		return result;
 	}
 
+	/**
+	 * Returns the index of the specified data key.
+	 * 
+	 * @param dataKey
+	 *            the data key.
+	 * @return the index of the data key.
+	 */
+	public int getDataIndex(final String dataKey) {
+		return this.dataKeys.indexOf(dataKey);
+	}
+
+	/**
+	 * Returns the agents, in the order in which their data are aggregated.
+	 * 
+	 * @return an unmodifiable view of the list of the agents.
+	 */
+	public List<IdentifiedAgent> getAgents() {
+		return Collections.unmodifiableList(this.agents);
+	}
+
 	/**
 	 * Returns an expression that provides an access to the specified data for
 	 * the specified agent.
 	 * 
+	 * The agent is designated by its ID and looked up, at each evaluation,
+	 * among the agents of the last closed period: once the agent has exited,
+	 * the expression returns {@code null}, and when the ID is recycled, the
+	 * expression returns the data of the new agent that bears it.
+	 * 
 	 * @param agentName
 	 *            the name of the agent for the data to be accessed.
 	 * 
@@ -499,7 +550,9 @@ public class SectorDataManager extends JamelObject {
 		} catch (NumberFormatException e) {
 			throw new RuntimeException("Bad agent ID: '"+agentName+"'",e);
 		}
-		final Agent agent = this.sector.select(agentID);
+		if (this.sector.select(agentID) == null) {
+			throw new RuntimeException("Agent not found: '" + agentName + "'");
+		}
 		if (args.length != 2) {
 			Jamel.println(args);
 			throw new RuntimeException("Bad number of parameters: " + args.length);
@@ -541,7 +594,9 @@ public class SectorDataManager extends JamelObject {
 						if (cache.containsKey(query)) {
 							value = cache.get(query);
 						} else {
-							final Double val = agent.getData(dataIndex, t);
+							final Agent[] byID = publishedByID;
+							final Agent agent = (agentID < byID.length) ? byID[agentID] : null;
+							final Double val = (agent == null) ? null : agent.getData(dataIndex, t);
 							/*for (final Agent agent : SectorDataManager.this.agents) {
 								Jamel.println(agent.getName(), agentName);
 
@@ -664,7 +719,7 @@ public class SectorDataManager extends JamelObject {
 					if (update) {
 						final int t = getPeriod();
 						this.data.clear();
-						for (Agent agent : agents) {
+						for (Agent agent : published) {
 							final Double x = agent.getData(xIndex, t);
 							final Double y = agent.getData(yIndex, t);
 							@SuppressWarnings("null")
@@ -685,13 +740,88 @@ public class SectorDataManager extends JamelObject {
 
 	/**
 	 * Appends all of the agent in the specified collection to this data
-	 * manager.
+	 * manager, and publishes them.
 	 * 
 	 * @param list
 	 *            the list of agents to be added.
 	 */
-	public void put(List<? extends Agent> list) {
-		this.agents.addAll(list);
+	public void put(List<? extends IdentifiedAgent> list) {
+		for (final IdentifiedAgent agent : list) {
+			this.add(agent);
+		}
+		this.publish();
+	}
+
+	/**
+	 * Appends the specified agent to this data manager.
+	 * 
+	 * The agent is taken into account from the next publication (see
+	 * {@link #publish()}).
+	 * 
+	 * @param agent
+	 *            the agent to be added.
+	 */
+	public void add(final IdentifiedAgent agent) {
+		final int id = agent.getID();
+		if (id >= this.positions.length) {
+			final int length = this.positions.length;
+			this.positions = Arrays.copyOf(this.positions, Math.max(id + 1, 2 * length));
+			Arrays.fill(this.positions, length, this.positions.length, -1);
+		}
+		if (this.positions[id] != -1) {
+			throw new RuntimeException("Agent ID already used: " + id);
+		}
+		this.positions[id] = this.agents.size();
+		this.agents.add(agent);
+		this.changed = true;
+	}
+
+	/**
+	 * Removes the specified agent from this data manager, in O(1).
+	 * 
+	 * The last agent takes the place of the removed one: the order of
+	 * aggregation of the data changes. The aggregates are computed again, with
+	 * the current agents, from the next publication (see {@link #publish()}).
+	 * 
+	 * @param agent
+	 *            the agent to be removed.
+	 */
+	public void remove(final IdentifiedAgent agent) {
+		final int id = agent.getID();
+		if (id >= this.positions.length || this.positions[id] == -1
+				|| this.agents.get(this.positions[id]) != agent) {
+			throw new RuntimeException("Agent not found: " + agent.getName());
+		}
+		final int position = this.positions[id];
+		final IdentifiedAgent last = this.agents.remove(this.agents.size() - 1);
+		if (last != agent) {
+			this.agents.set(position, last);
+			this.positions[last.getID()] = position;
+		}
+		this.positions[id] = -1;
+		this.changed = true;
+	}
+
+	/**
+	 * Publishes the agents of the period being closed.
+	 * 
+	 * The aggregates, the individual data and the scatter series are computed
+	 * over the agents of the last publication, an immutable snapshot: the
+	 * bookkeeping of a closed period (in pipelined mode) is not disturbed by
+	 * the entries and the exits of the next period. The data of the agents for
+	 * a closed period are not modified afterwards.
+	 */
+	public void publish() {
+		if (this.changed) {
+			final Agent[] byID = new Agent[this.positions.length];
+			for (final IdentifiedAgent agent : this.agents) {
+				byID[agent.getID()] = agent;
+			}
+			this.published = this.agents.toArray(new Agent[this.agents.size()]);
+			this.publishedByID = byID;
+			this.cache.clear();
+			this.changed = false;
+		}
 	}
 
 }
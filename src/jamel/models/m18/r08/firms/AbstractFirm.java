@@ -2,7 +2,10 @@ package jamel.models.m18.r08.firms;
 
 import java.util.function.Consumer;
 
+import jamel.models.m18.r08.roles.Shareholder;
 import jamel.models.m18.r08.util.AbstractAgent;
+import jamel.models.m18.r08.util.Account;
+import jamel.models.m18.r08.util.BasicOwnership;
 import jamel.util.Agent;
 import jamel.util.Sector;
 
@@ -95,6 +98,8 @@ import jamel.util.Sector;
  */
 abstract class AbstractFirm extends AbstractAgent implements Firm {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * The data keys.
 	 */
@@ -164,11 +169,35 @@ abstract class AbstractFirm extends AbstractAgent implements Firm {
 		super(sector, id);
 	}
 
+	/**
+	 * Returns the bank account of this firm.
+	 * 
+	 * @return the bank account of this firm.
+	 */
+	abstract protected Account getAccount();
+
+	/**
+	 * Returns the ownership of this firm.
+	 * 
+	 * @return the ownership of this firm.
+	 */
+	abstract protected BasicOwnership getOwnership();
+
 	/**
 	 * Pays the dividend to the owners of the firm.
 	 */
 	abstract protected void payDividend();
 
+	/**
+	 * Distributes the specified amount to the owners of the firm, pro rata of
+	 * their equities.
+	 * 
+	 * @param amount
+	 *            the amount to be distributed.
+	 * @return the amount actually paid.
+	 */
+	abstract protected long payOut(long amount);
+
 	/**
 	 * Pays the wages to the workers.
 	 */
@@ -184,4 +213,31 @@ abstract class AbstractFirm extends AbstractAgent implements Firm {
 	 */
 	abstract protected void production();
 
+	/**
+	 * Withdraws the supply and lays off the workers.
+	 */
+	abstract protected void stopActivity();
+
+	/**
+	 * Liquidates this firm: the workers are laid off, the supply is withdrawn,
+	 * the net worth is paid out to the owners, the equities are canceled and
+	 * the bank account is terminated.
+	 */
+	@Override
+	protected void disconnect() {
+		this.stopActivity();
+		final Account account = this.getAccount();
+		final BasicOwnership ownership = this.getOwnership();
+		final long netWorth = account.getAmount() - account.getDebt();
+		if (netWorth > 0 && !ownership.isEmpty()) {
+			final long remainder = netWorth - this.payOut(netWorth);
+			if (remainder > 0) {
+				final Shareholder owner = ownership.getEquities().get(0).getOwner();
+				owner.acceptDividendCheque(account.issueCheque(owner, remainder));
+			}
+		}
+		ownership.clear();
+		account.terminate(null);
+	}
+
 }
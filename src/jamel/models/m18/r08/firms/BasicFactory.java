@@ -1,5 +1,8 @@
 package jamel.models.m18.r08.firms;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -23,12 +26,16 @@ import jamel.util.Simulation;
 /**
  * A not-so-basic factory.
  */
-class BasicFactory extends JamelObject {
+class BasicFactory extends JamelObject implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * A machine.
 	 */
-	private class Machine {
+	private class Machine implements Serializable {
+
+		private static final long serialVersionUID = 1L;
 
 		/**
 		 * The estimated expiration date.
@@ -137,7 +144,9 @@ class BasicFactory extends JamelObject {
 	/**
 	 * A heap of unfinished materials.
 	 */
-	class Materials {
+	class Materials implements Serializable {
+
+		private static final long serialVersionUID = 1L;
 
 		/**
 		 * The period of production of the materials.
@@ -398,6 +407,22 @@ class BasicFactory extends JamelObject {
 		this.inputForNewMachines = new BasicGoods(this.getTechnology().getQualityOfInputForTheCreationOfANewMachine());
 	}
 
+	/**
+	 * Reads this factory from a checkpoint, and attaches it to the simulation of
+	 * its technology.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.setSimulation(this.technology.getSimulation());
+	}
+
 	int getOverhead() {
 		return Math.round(this.getCapacity() * this.overHeadRatio);
 	}
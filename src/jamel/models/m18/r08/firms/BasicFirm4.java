@@ -13,6 +13,8 @@ import jamel.util.Sector;
  */
 public class BasicFirm4 extends BasicFirm2 {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Creates a new firm.
 	 * 
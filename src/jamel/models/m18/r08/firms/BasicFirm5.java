@@ -1,5 +1,9 @@
 package jamel.models.m18.r08.firms;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -22,6 +26,7 @@ import jamel.models.m18.r08.util.Equity;
 import jamel.models.m18.r08.util.JobContract;
 import jamel.models.m18.r08.util.JobOffer;
 import jamel.models.m18.r08.util.Supply;
+import jamel.models.m18.r08.util.Tools;
 import jamel.util.Agent;
 import jamel.util.Parameters;
 import jamel.util.Sector;
@@ -128,11 +133,15 @@ import jamel.util.Sector;
  */
 public class BasicFirm5 extends AbstractFirm {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * The bank ownership.
 	 */
 	class FirmOwnership extends BasicOwnership {
 
+		private static final long serialVersionUID = 1L;
+
 		/**
 		 * Creates a new ownership for this firm.
 		 */
@@ -174,7 +183,9 @@ public class BasicFirm5 extends AbstractFirm {
 	 * The sales manager.
 	 */
 	@SuppressWarnings("javadoc")
-	class SalesManager {
+	class SalesManager implements Serializable {
+
+		private static final long serialVersionUID = 1L;
 
 		private long salesValue = 0;
 
@@ -309,7 +320,7 @@ public class BasicFirm5 extends AbstractFirm {
 
 		private Supply getSupply() {
 			final Supply result;
-			if (this.supply.getVolume() > 0) {
+			if (this.supply != null && this.supply.getVolume() > 0) {
 				result = this.supply;
 			} else {
 				result = null;
@@ -332,7 +343,9 @@ public class BasicFirm5 extends AbstractFirm {
 	 * A workforce manager.
 	 */
 	@SuppressWarnings("javadoc")
-	class WorkforceManager {
+	class WorkforceManager implements Serializable {
+
+		private static final long serialVersionUID = 1L;
 
 		/** The job offer. */
 		private JobOffer jobOffer = null;
@@ -638,7 +651,7 @@ public class BasicFirm5 extends AbstractFirm {
 	/**
 	 * The regular suppliers of investment goods.
 	 */
-	final private LinkedList<Supplier> regularSuppliers = new LinkedList<>();
+	private transient LinkedList<Supplier> regularSuppliers = new LinkedList<>();
 
 	/** The marketing manager. */
 	protected final SalesManager salesManager = new SalesManager();
@@ -666,7 +679,7 @@ public class BasicFirm5 extends AbstractFirm {
 	final private Workforce workforce = new Workforce();
 
 	/** The account. */
-	protected final Account account;
+	protected Account account;
 
 	/**
 	 * The constants.
@@ -718,13 +731,11 @@ public class BasicFirm5 extends AbstractFirm {
 		this.factory = new BasicFactory(sector.getParameters().get("production"), sector.getSimulation());
 		final Parameters parameters = this.sector.getParameters();
 
-		this.cons = new FirmConstants(parameters);
+		this.cons = this.getConstants(FirmConstants.class, FirmConstants::new);
 
 		this.markup = 1.f + this.cons.initialMarkupMin
 				+ getRandom().nextFloat() * (this.cons.initialMarkupMax - this.cons.initialMarkupMin);
 
-		this.account = ((Bank) this.getSimulation().getSector(this.cons.banks).selectList(1).get(0)).openAccount(this);
-
 		final float min = parameters.getFloat("debtRatio.target.initialValue.min");
 		final float max = parameters.getFloat("debtRatio.target.initialValue.max");
 		this.targetDebtRatio = min + (max - min) * this.getRandom().nextFloat();
@@ -733,6 +744,40 @@ public class BasicFirm5 extends AbstractFirm {
 
 	}
 
+	/**
+	 * Reads this firm from a checkpoint.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.regularSuppliers = new LinkedList<>();
+		readLinks(in, (agents) -> {
+			for (final Agent agent : agents) {
+				this.regularSuppliers.add((Supplier) agent);
+			}
+		});
+	}
+
+	/**
+	 * Writes this firm into a checkpoint, with links to its regular suppliers (see
+	 * {@link AbstractAgent#writeLinks(ObjectOutputStream, Agent[])}).
+	 * 
+	 * @param out
+	 *            the output stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		writeLinks(out, this.regularSuppliers.toArray(new Agent[this.regularSuppliers.size()]));
+	}
+
 	private void changeOwnerShip(final long capitalRequirement) {
 		// On commence par se débarasser des propriétaires actuels.
 		this.ownership.clear();
@@ -1013,6 +1058,32 @@ public class BasicFirm5 extends AbstractFirm {
 		return budget;
 	}
 
+	@Override
+	protected void connect() {
+		this.account = ((Bank) this.getSimulation().getSector(this.cons.banks).selectList(1).get(0)).openAccount(this);
+	}
+
+	@Override
+	protected Account getAccount() {
+		return this.account;
+	}
+
+	@Override
+	protected BasicOwnership getOwnership() {
+		return this.ownership;
+	}
+
+	@Override
+	protected long payOut(long amount) {
+		return this.ownership.payDividends(amount);
+	}
+
+	@Override
+	protected void stopActivity() {
+		this.salesManager.open();
+		this.workforce.layoff();
+	}
+
 	/**
 	 * Computes and returns the capital of this firm.
 	 * 
@@ -1076,7 +1147,7 @@ public class BasicFirm5 extends AbstractFirm {
 
 		if (i > 0) {
 			@SuppressWarnings("unchecked")
-			final List<? extends Supplier> suppliers = (List<? extends Supplier>) this.supplierSector.selectList(i);
+			final List<? extends Supplier> suppliers = (List<? extends Supplier>) Tools.selectSuppliers(this.supplierSector, i);
 			for (final Agent supplier : suppliers) {
 				final Supply supply = ((Supplier) supplier).getSupply();
 				if (!supplier.equals(this) && supply != null && !supply.isEmpty() && !list.contains(supply)) {
@@ -1537,10 +1608,4 @@ public class BasicFirm5 extends AbstractFirm {
 		this.imitations = 0;
 	}
 
-	@Override
-	public boolean satisfy(String criteria) {
-		Jamel.notUsed();
-		return false;
-	}
-
 }
@@ -16,6 +16,8 @@ import jamel.util.Sector;
  */
 public class BasicFirm6 extends BasicFirm5 {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Creates a new firm.
 	 * 
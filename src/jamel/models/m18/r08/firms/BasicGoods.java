@@ -1,5 +1,7 @@
 package jamel.models.m18.r08.firms;
 
+import java.io.Serializable;
+
 import jamel.Jamel;
 import jamel.models.m18.r08.firms.BasicFactory.Materials;
 import jamel.models.m18.r08.util.Commodities;
@@ -10,7 +12,9 @@ import jamel.models.m18.r08.util.Commodities;
  * 2018-01-28 : intégration de la "qualité" des biens.
  * 
  */
-public class BasicGoods implements Commodities {
+public class BasicGoods implements Commodities, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The quality, or type, of the goods in this heap.
@@ -21,7 +21,7 @@ final public class FirmKeys extends AbstractDataKeys {
 	 * 
 	 * @return an instance of {@code BasicShareholderKeys}.
 	 */
-	public static FirmKeys getInstance() {
+	public static synchronized FirmKeys getInstance() {
 		if (instance == null) {
 			instance = new FirmKeys();
 		}
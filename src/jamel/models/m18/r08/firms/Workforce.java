@@ -17,6 +17,8 @@ import jamel.models.m18.r08.util.JobContract;
  */
  class Workforce extends LinkedList<JobContract> {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Removes all invalid job contracts.
 	 */
@@ -1,5 +1,8 @@
 package jamel.models.m18.r08.households;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.function.Consumer;
 
@@ -45,6 +48,8 @@ import jamel.util.Sector;
  */
 public class BasicShareholder extends AbstractAgent implements Shareholder, Household {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * The data keys.
 	 */
@@ -91,7 +96,7 @@ public class BasicShareholder extends AbstractAgent implements Shareholder, Hous
 	/**
 	 * The bank account of this shareholder.
 	 */
-	protected final Account account;
+	protected Account account;
 
 	/**
 	 * The set of constants of this worker.
@@ -121,7 +126,7 @@ public class BasicShareholder extends AbstractAgent implements Shareholder, Hous
 	/**
 	 * The regular suppliers of this worker.
 	 */
-	final private Supplier[] suppliers;
+	private transient Supplier[] suppliers;
 
 	/**
 	 * The sector of the suppliers.
@@ -139,21 +144,64 @@ public class BasicShareholder extends AbstractAgent implements Shareholder, Hous
 	public BasicShareholder(final Sector sector, final int id) {
 		super(sector, id);
 
-		final Parameters params = this.sector.getParameters();
-		if (params == null) {
+		if (this.sector.getParameters() == null) {
 			throw new RuntimeException("Parameters are null.");
 		}
-		this.consts = new ShareholderConstants(params);
-
-		final String bankSectorName = params.getAttribute("bankSector");
-		this.account = ((Bank) this.getSimulation().getSector(bankSectorName).selectArray(1)[0]).openAccount(this);
+		this.consts = this.getConstants(ShareholderConstants.class, ShareholderConstants::new);
 
-		final Parameters goodMarketParams = params.get("goodMarket");
-		this.supplierSector = this.getSimulation().getSector(goodMarketParams.getAttribute("suppliers"));
+		this.supplierSector = this.getSimulation().getSector(this.consts.supplierSectorName);
 		this.suppliers = new Supplier[this.consts.supplySearch];
 
 	}
 
+	/**
+	 * Reads this shareholder from a checkpoint.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		readLinks(in, (agents) -> this.suppliers = Arrays.copyOf(agents, agents.length, Supplier[].class));
+	}
+
+	/**
+	 * Writes this shareholder into a checkpoint, with links to its suppliers (see
+	 * {@link AbstractAgent#writeLinks(ObjectOutputStream, jamel.util.Agent[])}).
+	 * 
+	 * @param out
+	 *            the output stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		writeLinks(out, this.suppliers);
+	}
+
+	@Override
+	protected void connect() {
+		this.account = ((Bank) this.getSimulation().getSector(this.consts.bankSectorName).selectArray(1)[0]).openAccount(this);
+	}
+
+	/**
+	 * Bequeaths the equities and the deposit to another shareholder of the
+	 * sector.
+	 */
+	@Override
+	protected void disconnect() {
+		final BasicShareholder heir = (BasicShareholder) this.sector.selectArray(1)[0];
+		if (heir == null) {
+			throw new RuntimeException("No heir for " + this.getName());
+		}
+		this.equities.bequeath(heir, heir.equities);
+		this.account.terminate(heir.account);
+	}
+
 	/**
 	 * Computes and returns the consumption budget.
 	 * 
@@ -196,7 +244,7 @@ public class BasicShareholder extends AbstractAgent implements Shareholder, Hous
 		long consumptionValue = 0;
 		long amount = budget;
 		if (amount > 0) {
-			this.suppliers[suppliers.length - 1] = (Supplier) this.supplierSector.select();
+			this.suppliers[suppliers.length - 1] = (Supplier) Tools.selectSupplier(this.supplierSector);
 
 			Arrays.sort(suppliers, Tools.supplierComparator);
 
@@ -343,10 +391,4 @@ public class BasicShareholder extends AbstractAgent implements Shareholder, Hous
 		this.dividends.cancel();
 	}
 
-	@Override
-	public boolean satisfy(String criteria) {
-		Jamel.notUsed();
-		return false;
-	}
-
 }
@@ -17,6 +17,8 @@ import jamel.util.Sector;
  */
 public class BasicShareholder2 extends BasicShareholder {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Creates a new shareholder.
 	 * 
@@ -1,5 +1,8 @@
 package jamel.models.m18.r08.households;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -53,6 +56,8 @@ import jamel.util.Sector;
  */
 public class BasicWorker2 extends AbstractAgent implements Worker, Household {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * The job offer comparator.
 	 * <p>
@@ -134,7 +139,7 @@ public class BasicWorker2 extends AbstractAgent implements Worker, Household {
 	/**
 	 * The bank account of this worker.
 	 */
-	private final Account account;
+	private Account account;
 
 	/**
 	 * A flag that indicates whether this worker is exhausted or not.
@@ -143,14 +148,14 @@ public class BasicWorker2 extends AbstractAgent implements Worker, Household {
 
 	/**
 	 * The list of the job offers the worker received since the start of the
-	 * period.
+	 * period (not written in the checkpoints: it is cleared at the opening).
 	 */
-	final private List<JobOffer> jobOffers = new LinkedList<>();
+	private transient List<JobOffer> jobOffers = new LinkedList<>();
 
 	/**
 	 * The regular suppliers of this worker.
 	 */
-	final private Supplier[] suppliers;
+	private transient Supplier[] suppliers;
 
 	/**
 	 * The sector of the suppliers.
@@ -197,13 +202,60 @@ public class BasicWorker2 extends AbstractAgent implements Worker, Household {
 	 */
 	public BasicWorker2(final Sector sector, final int id) {
 		super(sector, id);
-		this.k = new WorkerConstants(this.sector.getParameters());
-		this.account = ((Bank) this.getSimulation().getSector(this.k.bankSectorName).selectArray(1)[0])
-				.openAccount(this);
+		this.k = this.getConstants(WorkerConstants.class, WorkerConstants::new);
 		this.supplierSector = this.getSimulation().getSector(this.k.supplierSectorName);
 		this.suppliers = new Supplier[this.k.supplySearch];
 	}
 
+	/**
+	 * Reads this worker from a checkpoint.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.jobOffers = new LinkedList<>();
+		readLinks(in, (agents) -> this.suppliers = Arrays.copyOf(agents, agents.length, Supplier[].class));
+	}
+
+	/**
+	 * Writes this worker into a checkpoint, with links to its suppliers (see
+	 * {@link AbstractAgent#writeLinks(ObjectOutputStream, jamel.util.Agent[])}).
+	 * 
+	 * @param out
+	 *            the output stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		writeLinks(out, this.suppliers);
+	}
+
+	@Override
+	protected void connect() {
+		this.account = ((Bank) this.getSimulation().getSector(this.k.bankSectorName).selectArray(1)[0]).openAccount(this);
+	}
+
+	/**
+	 * Breaches the job contract and bequeaths the deposit to another worker
+	 * of the sector.
+	 */
+	@Override
+	protected void disconnect() {
+		if (this.jobContract != null && this.jobContract.isValid()) {
+			this.jobContract.breach();
+		}
+		this.jobContract = null;
+		final BasicWorker2 heir = (BasicWorker2) this.sector.selectArray(1)[0];
+		this.account.terminate((heir == null) ? null : heir.account);
+	}
+
 	/**
 	 * Updates the reservation wage of this worker.
 	 * Should be called at the beginning of the period.
@@ -322,7 +374,7 @@ public class BasicWorker2 extends AbstractAgent implements Worker, Household {
 		long consumptionVolume = 0;
 		long consumptionValue = 0;
 		if (budget > 0) {
-			this.suppliers[suppliers.length - 1] = (Supplier) this.supplierSector.select();
+			this.suppliers[suppliers.length - 1] = (Supplier) Tools.selectSupplier(this.supplierSector);
 
 			Arrays.sort(suppliers, Tools.supplierComparator);
 
@@ -409,12 +461,6 @@ public class BasicWorker2 extends AbstractAgent implements Worker, Household {
 		this.wage.cancel();
 	}
 
-	@Override
-	public boolean satisfy(String criteria) {
-		Jamel.notUsed();
-		return false;
-	}
-
 	@Override
 	public void work() {
 		if (this.jobContract == null || this.exhausted == true) {
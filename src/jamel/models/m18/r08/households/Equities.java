@@ -1,11 +1,13 @@
 package jamel.models.m18.r08.households;
 
+import java.io.Serializable;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import jamel.Jamel;
+import jamel.models.m18.r08.roles.Shareholder;
 import jamel.models.m18.r08.util.Equity;
 
 /**
@@ -15,7 +17,9 @@ import jamel.models.m18.r08.util.Equity;
  * Pour permettre aux shareholders de connaître leur richesse.
  */
 @SuppressWarnings("javadoc")
-public class Equities {
+public class Equities implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	private Map<String, Equity> titles = new LinkedHashMap<>();
 
@@ -31,6 +35,23 @@ public class Equities {
 		titles.put(title.getCompanyName(), title);
 	}
 
+	/**
+	 * Transfers all the titles of this portfolio to the specified heir.
+	 * 
+	 * @param heir
+	 *            the new owner of the titles.
+	 * @param heirTitles
+	 *            the portfolio of the heir.
+	 */
+	public void bequeath(Shareholder heir, Equities heirTitles) {
+		for (Equity title : titles.values()) {
+			if (!title.isCanceled() && title.transfer(heir) == title) {
+				heirTitles.add(title);
+			}
+		}
+		titles.clear();
+	}
+
 	public long getValue() {
 		long result = 0;
 		final Iterator<Entry<String, Equity>> iter = titles.entrySet().iterator();
@@ -1,17 +1,26 @@
 package jamel.models.m18.r08.households;
 
+import java.io.Serializable;
+
 import jamel.util.Parameters;
 
 /**
  * Represents a set of constants.
  */
-class ShareholderConstants {
+class ShareholderConstants implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The supervision period.
 	 */
 	final float supervision;
 
+	/**
+	 * The name of the bank sector.
+	 */
+	final public String bankSectorName;
+
 	/**
 	 * The savings target ratio.
 	 */
@@ -32,6 +41,11 @@ class ShareholderConstants {
 	 */
 	final public float savingsRatioTarget;
 
+	/**
+	 * The name of the supplier sector.
+	 */
+	final public String supplierSectorName;
+
 	/**
 	 * The number of suppliers to be selected in the consumption phase.
 	 */
@@ -50,6 +64,8 @@ class ShareholderConstants {
 		this.savingsPropensityToSave = parameters.getFloat("goodMarket.savingPropensity");
 		this.savingsRatioTarget = parameters.getFloat("goodMarket.savingsRatioTarget");
 		this.consumptionGoodsQuality = parameters.getString("goodMarket.quality");
+		this.supplierSectorName = parameters.getString("goodMarket.suppliers");
+		this.bankSectorName = parameters.getString("bankSector");
 	}
 
 }
\ No newline at end of file
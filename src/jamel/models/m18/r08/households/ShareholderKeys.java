@@ -17,7 +17,7 @@ public class ShareholderKeys extends AbstractDataKeys {
 	 * 
 	 * @return an instance of {@code BasicShareholderKeys}.
 	 */
-	static ShareholderKeys getInstance() {
+	static synchronized ShareholderKeys getInstance() {
 		if (instance == null) {
 			instance = new ShareholderKeys();
 		}
@@ -1,11 +1,15 @@
 package jamel.models.m18.r08.households;
 
+import java.io.Serializable;
+
 import jamel.util.Parameters;
 
 /**
  * Represents a set of constants.
  */
-class WorkerConstants {
+class WorkerConstants implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The supervision period.
@@ -17,7 +17,7 @@ public class WorkerKeys extends AbstractDataKeys {
 	 * 
 	 * @return an instance of {@code BasicWorkerKeys}.
 	 */
-	public static WorkerKeys getInstance() {
+	public static synchronized WorkerKeys getInstance() {
 		if (instance == null) {
 			instance = new WorkerKeys();
 		}
@@ -0,0 +1,66 @@
+package jamel.models.m18.r08.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for the debt recovery of a bank.
+ */
+@Name("jamel.DebtRecovery")
+@Label("Debt Recovery")
+@Category("Jamel")
+@Description("The recovery of the loans and of the overdue debts by a bank.")
+public class DebtRecoveryEvent extends Event {
+
+	/**
+	 * The name of the bank.
+	 */
+	@Label("Bank")
+	public String bank;
+
+	/**
+	 * The number of loans at the start of the recovery.
+	 */
+	@Label("Loans")
+	public long loans;
+
+	/**
+	 * The number of loans fully repaid.
+	 */
+	@Label("Loans Repaid")
+	public long loansRepaid;
+
+	/**
+	 * The long term debt after the recovery.
+	 */
+	@Label("Long Term Debt")
+	public long longTermDebt;
+
+	/**
+	 * The number of overdue debts.
+	 */
+	@Label("Overdue Debts")
+	public long overdueDebts;
+
+	/**
+	 * The period.
+	 */
+	@Label("Period")
+	public int period;
+
+	/**
+	 * The name of the sector.
+	 */
+	@Label("Sector")
+	public String sector;
+
+	/**
+	 * The short term debt after the recovery.
+	 */
+	@Label("Short Term Debt")
+	public long shortTermDebt;
+
+}
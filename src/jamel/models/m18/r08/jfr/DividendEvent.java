@@ -0,0 +1,48 @@
+package jamel.models.m18.r08.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for the payment of the dividends of a bank.
+ */
+@Name("jamel.Dividends")
+@Label("Dividends")
+@Category("Jamel")
+@Description("The payment of the dividends by a bank.")
+public class DividendEvent extends Event {
+
+	/**
+	 * The name of the bank.
+	 */
+	@Label("Bank")
+	public String bank;
+
+	/**
+	 * The capital of the bank, before the payment.
+	 */
+	@Label("Capital")
+	public long capital;
+
+	/**
+	 * The dividends paid.
+	 */
+	@Label("Dividends")
+	public long dividends;
+
+	/**
+	 * The period.
+	 */
+	@Label("Period")
+	public int period;
+
+	/**
+	 * The name of the sector.
+	 */
+	@Label("Sector")
+	public String sector;
+
+}
@@ -0,0 +1,49 @@
+package jamel.models.m18.r08.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for the run of a phase.
+ */
+@Name("jamel.Phase")
+@Label("Phase")
+@Category("Jamel")
+@Description("The run of a phase of a sector or of a market.")
+public class PhaseEvent extends Event {
+
+	/**
+	 * The number of agents that acted in the phase.
+	 */
+	@Label("Agents")
+	public long agents;
+
+	/**
+	 * The number of matches (eg. the hires of the labor market), or 0 if the
+	 * phase does not match agents.
+	 */
+	@Label("Matches")
+	public long matches;
+
+	/**
+	 * The period.
+	 */
+	@Label("Period")
+	public int period;
+
+	/**
+	 * The name of the phase.
+	 */
+	@Label("Phase")
+	public String phase;
+
+	/**
+	 * The name of the sector.
+	 */
+	@Label("Sector")
+	public String sector;
+
+}
@@ -0,0 +1,7 @@
+/**
+ * Java Flight Recorder events for the simulation.
+ * 
+ * The events are committed only when a recording is running (eg. with
+ * {@code -XX:StartFlightRecording}); otherwise they cost nothing.
+ */
+package jamel.models.m18.r08.jfr;
@@ -1,17 +1,22 @@
 package jamel.models.m18.r08.markets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
 
 import jamel.Jamel;
 import jamel.data.DynamicSeries;
 import jamel.data.Expression;
 import jamel.data.SectorDataManager;
 import jamel.models.m18.r08.households.Household;
+import jamel.models.m18.r08.util.BasicSimulation;
+import jamel.models.m18.r08.util.PhaseProfiler;
 import jamel.util.Agent;
 import jamel.util.JamelObject;
 import jamel.util.Parameters;
@@ -56,6 +61,11 @@ public class BasicConsumptionGoodMarket extends JamelObject implements Sector {
 	 */
 	final private Map<String, Phase> phases = new HashMap<>();
 
+	/**
+	 * The profilers of the phases, accessible by the names of the phases.
+	 */
+	final private Map<String, PhaseProfiler> profilers = new HashMap<>();
+
 	/**
 	 * Creates a new basic sector.
 	 * 
@@ -92,21 +102,12 @@ public class BasicConsumptionGoodMarket extends JamelObject implements Sector {
 	private Expression getSectorDataAccess(String arg) {
 		final Expression result;
 		final String[] args = arg.split("\\.");
-		if (args[0].equals("phase") && args[2].equals("runtime")) {
-			final Phase phase = this.phases.get(args[1]);
-			result = new Expression() {
-
-				@Override
-				public Double getValue() {
-					return (double) phase.getRuntime();
-				}
-
-				@Override
-				public String toString() {
-					return name + ".phase." + args[1] + ".runtime";
-				}
-
-			};
+		if (args[0].equals("phase") && args.length > 2) {
+			final PhaseProfiler profiler = this.profilers.get(args[1]);
+			if (profiler == null) {
+				throw new RuntimeException("Unknown phase: '" + args[1] + "' in '" + arg + "'");
+			}
+			result = profiler.getDataAccess(Arrays.copyOfRange(args, 2, args.length));
 		} else {
 			throw new RuntimeException("Bad key: '" + args[0] + "' in '" + arg + "'");
 		}
@@ -161,13 +162,20 @@ public class BasicConsumptionGoodMarket extends JamelObject implements Sector {
 			throw new RuntimeException("Phase name is null");
 		}
 
+		final Random phaseRandom = ((BasicSimulation) this.getSimulation())
+				.getRandomStream("phase/" + this.name + "." + phaseName);
+
 		if (!phaseName.equals("consumption")) {
 			throw new RuntimeException("Bad phase name: '" + phaseName + "'");
 		}
 
-		final Phase result = new Phase() {
+		final PhaseProfiler profiler = new PhaseProfiler(this.name, phaseName, this.getSimulation());
 
-			private long runtime = 0;
+		// The households of all the consumer sectors, reused from one period
+		// to the next.
+		final List<Agent> households = new ArrayList<>();
+
+		final Phase result = new Phase() {
 
 			@Override
 			public String getName() {
@@ -176,7 +184,7 @@ public class BasicConsumptionGoodMarket extends JamelObject implements Sector {
 
 			@Override
 			public long getRuntime() {
-				return this.runtime;
+				return profiler.getRuntime();
 			}
 
 			@Override
@@ -187,25 +195,27 @@ public class BasicConsumptionGoodMarket extends JamelObject implements Sector {
 			@Override
 			public void run() {
 
-				final long start = System.currentTimeMillis();
-
-				final List<Agent> households = new ArrayList<>();
+				profiler.start();
 
 				for (Sector sector : consumers) {
-					households.addAll(sector.selectAll());
+					final List<? extends Agent> agents = sector.selectAll();
+					for (int i = 0; i < agents.size(); i++) {
+						households.add(agents.get(i));
+					}
 				}
 
 				if (shuffle) {
-					Collections.shuffle(households, getRandom());
+					Collections.shuffle(households, phaseRandom);
 				}
 
+				final Consumer<Agent> consumption = profiler
+						.instrument((household) -> ((Household) household).consumption());
 				for (int i = 0; i < households.size(); i++) {
-					((Household) households.get(i)).consumption();
+					consumption.accept(households.get(i));
 				}
 
-				final long end = System.currentTimeMillis();
-
-				runtime += end - start;
+				profiler.stop(households.size(), 0);
+				households.clear();
 
 			}
 
@@ -216,6 +226,7 @@ public class BasicConsumptionGoodMarket extends JamelObject implements Sector {
 			throw new RuntimeException(
 					"The sector " + name + " alreday contains a phase with the name '" + phaseName + "'");
 		}
+		this.profilers.put(phaseName, profiler);
 
 		return result;
 
@@ -1,17 +1,20 @@
 package jamel.models.m18.r08.markets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import jamel.Jamel;
 import jamel.data.DynamicSeries;
 import jamel.data.Expression;
 import jamel.models.m18.r08.firms.Firm;
 import jamel.models.m18.r08.households.Household;
+import jamel.models.m18.r08.util.PhaseProfiler;
 import jamel.util.Agent;
 import jamel.util.JamelObject;
 import jamel.util.Parameters;
@@ -53,6 +56,11 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 	 */
 	final private Map<String, Phase> phases = new HashMap<>();
 
+	/**
+	 * The profilers of the phases, accessible by the names of the phases.
+	 */
+	final private Map<String, PhaseProfiler> profilers = new HashMap<>();
+
 	/**
 	 * Creates a new basic sector.
 	 * 
@@ -77,6 +85,28 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 
 	}
 
+	/**
+	 * Returns an expression that gives access to some sectoral data.
+	 * 
+	 * @param arg
+	 *            the argument of the expression to be returned.
+	 * @return an expression that gives access to some sectoral data.
+	 */
+	private Expression getSectorDataAccess(String arg) {
+		final Expression result;
+		final String[] args = arg.split("\\.");
+		if (args[0].equals("phase") && args.length > 2) {
+			final PhaseProfiler profiler = this.profilers.get(args[1]);
+			if (profiler == null) {
+				throw new RuntimeException("Unknown phase: '" + args[1] + "' in '" + arg + "'");
+			}
+			result = profiler.getDataAccess(Arrays.copyOfRange(args, 2, args.length));
+		} else {
+			throw new RuntimeException("Bad key: '" + args[0] + "' in '" + arg + "'");
+		}
+		return result;
+	}
+
 	@Override
 	public void close() {
 		// Does nothing.
@@ -94,8 +124,14 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 
 	@Override
 	public Expression getDataAccess(String[] args) {
-		Jamel.notUsed();
-		return null;
+		final Expression result;
+		if (args.length == 1) {
+			result = this.getSectorDataAccess(args[0]);
+		} else {
+			Jamel.println("Bad query", args);
+			throw new RuntimeException("Bad query");
+		}
+		return result;
 	}
 
 	@Override
@@ -125,9 +161,13 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 			throw new RuntimeException("Bad phase name: '" + phaseName + "'");
 		}
 
-		final Phase result = new Phase() {
+		final PhaseProfiler profiler = new PhaseProfiler(this.name, phaseName, this.getSimulation());
+
+		// The firms of all the customer sectors, reused from one period to
+		// the next.
+		final List<Agent> firms = new ArrayList<>();
 
-			private long runtime = 0;
+		final Phase result = new Phase() {
 
 			@Override
 			public String getName() {
@@ -136,7 +176,7 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 
 			@Override
 			public long getRuntime() {
-				return this.runtime;
+				return profiler.getRuntime();
 			}
 
 			@Override
@@ -147,25 +187,26 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 			@Override
 			public void run() {
 
-				final long start = System.currentTimeMillis();
-
-				final List<Agent> firms = new ArrayList<>();
+				profiler.start();
 
 				for (Sector sector : customerSectors) {
-					firms.addAll(sector.selectAll());
+					final List<? extends Agent> agents = sector.selectAll();
+					for (int i = 0; i < agents.size(); i++) {
+						firms.add(agents.get(i));
+					}
 				}
 
 				if (shuffle) {
 					Collections.shuffle(firms, getRandom());
 				}
 
+				final Consumer<Agent> investment = profiler.instrument((firm) -> ((Firm) firm).invest());
 				for (int i = 0; i < firms.size(); i++) {
-					((Firm) firms.get(i)).invest();
+					investment.accept(firms.get(i));
 				}
 
-				final long end = System.currentTimeMillis();
-
-				runtime += end - start;
+				profiler.stop(firms.size(), 0);
+				firms.clear();
 
 			}
 
@@ -176,6 +217,7 @@ public class BasicInvestmentGoodMarket extends JamelObject implements Sector {
 			throw new RuntimeException(
 					"The sector " + name + " alreday contains a phase with the name '" + phaseName + "'");
 		}
+		this.profilers.put(phaseName, profiler);
 
 		return result;
 
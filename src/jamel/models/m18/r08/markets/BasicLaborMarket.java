@@ -1,10 +1,13 @@
 package jamel.models.m18.r08.markets;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import jamel.Jamel;
 import jamel.data.DynamicSeries;
@@ -12,6 +15,9 @@ import jamel.data.Expression;
 import jamel.models.m18.r08.roles.Employer;
 import jamel.models.m18.r08.roles.Worker;
 import jamel.models.m18.r08.util.BasicSector;
+import jamel.models.m18.r08.util.BasicSimulation;
+import jamel.models.m18.r08.util.JobOffer;
+import jamel.models.m18.r08.util.PhaseProfiler;
 import jamel.util.Agent;
 import jamel.util.JamelObject;
 import jamel.util.Parameters;
@@ -34,13 +40,59 @@ import jamel.util.Simulation;
  * 2018-03-08 : BasicLaborMarket2
  * nouvelle version plus proche du labor market de la version ICC.
  * Conçu pour travailler uniquement avec BasicWorker2.
+ * 
+ * The attribute {@code matching} of the parameters selects the matching:
+ * {@code random} (the default, each employer sends job offers to job seekers
+ * selected at random) or {@code batch} (the market is cleared in one pass,
+ * each job seeker sampling {@code applications} vacancies, 3 by default).
  */
 public class BasicLaborMarket extends JamelObject implements Sector {
 
+	/**
+	 * Compares the job offers by decreasing wage.
+	 */
+	private static final Comparator<JobOffer> byWage = (offer1, offer2) -> Long.compare(offer2.getWage(),
+			offer1.getWage());
+
+	/**
+	 * Shuffles the first elements of the specified array.
+	 * 
+	 * Draws the same random numbers, and gives the same permutation, as
+	 * {@link Collections#shuffle(List, Random)} on a list of these elements.
+	 * 
+	 * @param array
+	 *            the array.
+	 * @param size
+	 *            the number of elements to be shuffled.
+	 * @param random
+	 *            the source of randomness.
+	 */
+	private static void shuffle(final Object[] array, final int size, final Random random) {
+		for (int i = size; i > 1; i--) {
+			final int j = random.nextInt(i);
+			final Object tmp = array[i - 1];
+			array[i - 1] = array[j];
+			array[j] = tmp;
+		}
+	}
+
+	/**
+	 * The number of vacancies sampled by each job seeker, in the batch
+	 * matching.
+	 */
+	final private int applications;
+
+	/**
+	 * A flag that indicates whether the market is cleared in one batch
+	 * (attribute {@code matching="batch"} of the parameters), or by random
+	 * job offers (the default, {@code matching="random"}).
+	 */
+	final private boolean batch;
+
 	/**
 	 * The employers.
 	 */
-	final private List<Sector> employers = new LinkedList<>();
+	final private List<Sector> employers = new ArrayList<>();
 
 	/**
 	 * The name of the sector.
@@ -57,6 +109,11 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 	 */
 	final private Map<String, Phase> phases = new HashMap<>();
 
+	/**
+	 * The profilers of the phases, accessible by the names of the phases.
+	 */
+	final private Map<String, PhaseProfiler> profilers = new HashMap<>();
+
 	/**
 	 * The workers.
 	 */
@@ -83,6 +140,23 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 			this.employers.add(this.getSimulation().getSector(employerSector.trim()));
 		}
 		this.workers = this.getSimulation().getSector(this.params.getString("parameters.workers"));
+		final Parameters parameters = this.params.get("parameters");
+		final String matching = parameters.hasAttribute("matching") ? parameters.getAttribute("matching") : "random";
+		switch (matching) {
+		case "random":
+			this.batch = false;
+			break;
+		case "batch":
+			this.batch = true;
+			break;
+		default:
+			throw new RuntimeException("Sector \'" + this.name + "\': bad matching: \'" + matching + "\'");
+		}
+		this.applications = parameters.hasAttribute("applications") ? parameters.getIntAttribute("applications")
+				: 3;
+		if (this.applications < 1) {
+			throw new RuntimeException("Sector \'" + this.name + "\': bad applications: " + this.applications);
+		}
 	}
 
 	/**
@@ -95,21 +169,12 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 	private Expression getSectorDataAccess(String arg) {
 		final Expression result;
 		final String[] args = arg.split("\\.");
-		if (args[0].equals("phase") && args[2].equals("runtime")) {
-			final Phase phase = this.phases.get(args[1]);
-			result = new Expression() {
-
-				@Override
-				public Double getValue() {
-					return (double) phase.getRuntime();
-				}
-
-				@Override
-				public String toString() {
-					return name + ".phase." + args[1] + ".runtime";
-				}
-
-			};
+		if (args[0].equals("phase") && args.length > 2) {
+			final PhaseProfiler profiler = this.profilers.get(args[1]);
+			if (profiler == null) {
+				throw new RuntimeException("Unknown phase: '" + args[1] + "' in '" + arg + "'");
+			}
+			result = profiler.getDataAccess(Arrays.copyOfRange(args, 2, args.length));
 		} else {
 			throw new RuntimeException("Bad key: '" + args[0] + "' in '" + arg + "'");
 		}
@@ -168,11 +233,43 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 			throw new RuntimeException("Phase name is null");
 		}
 
+		final Random phaseRandom = ((BasicSimulation) this.getSimulation())
+				.getRandomStream("phase/" + this.name + "." + phaseName);
+
+		final PhaseProfiler profiler = new PhaseProfiler(this.name, phaseName, this.getSimulation());
+
 		final Phase result;
 		if (phaseName.equals("matching")) {
 			result = new Phase() {
 
-				private long runtime = 0;
+				/**
+				 * The cumulated numbers of vacancies of the sorted job offers
+				 * of the batch matching, reused from one period to the next.
+				 */
+				private int[] cumulated = new int[0];
+
+				/**
+				 * The employers with vacancies, reused from one period to the
+				 * next.
+				 */
+				private Employer[] employers2 = new Employer[0];
+
+				/**
+				 * The job offers of the batch matching, reused from one
+				 * period to the next.
+				 */
+				private JobOffer[] offers = new JobOffer[0];
+
+				/**
+				 * The job seekers, reused from one period to the next.
+				 */
+				private Worker[] jobSeekers = new Worker[0];
+
+				/**
+				 * The job seekers that received at least one job offer, by
+				 * index in the pool.
+				 */
+				private boolean[] solicited = new boolean[0];
 
 				@Override
 				public String getName() {
@@ -181,7 +278,7 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 
 				@Override
 				public long getRuntime() {
-					return this.runtime;
+					return profiler.getRuntime();
 				}
 
 				@Override
@@ -192,53 +289,152 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 				@Override
 				public void run() {
 
-					final long start = System.currentTimeMillis();
+					profiler.start();
 
-					final List<Worker> jobSeekers = new LinkedList<>();
-					for (Agent worker : workers.selectAll()) {
-						if (!((Worker) worker).isEmployed()) {
-							jobSeekers.add((Worker) worker);
+					final List<? extends Agent> workerList = workers.selectAll();
+					if (this.jobSeekers.length < workerList.size()) {
+						this.jobSeekers = new Worker[workerList.size()];
+						this.solicited = new boolean[workerList.size()];
+					}
+					int nSeekers = 0;
+					for (int i = 0; i < workerList.size(); i++) {
+						final Worker worker = (Worker) workerList.get(i);
+						if (!worker.isEmployed()) {
+							this.jobSeekers[nSeekers] = worker;
+							nSeekers++;
 						}
 					}
 
-					final List<Employer> employers2 = new LinkedList<>();
+					int nEmployers = 0;
 					for (Sector employerSector : employers) {
-						for (Agent employer : employerSector.selectAll()) {
-							if (((Employer) employer).getJobOffer() != null
-									&& !((Employer) employer).getJobOffer().isEmpty()) {
-								employers2.add((Employer) employer);
+						final List<? extends Agent> employerList = employerSector.selectAll();
+						if (this.employers2.length < nEmployers + employerList.size()) {
+							this.employers2 = Arrays.copyOf(this.employers2, nEmployers + employerList.size());
+						}
+						for (int i = 0; i < employerList.size(); i++) {
+							final Employer employer = (Employer) employerList.get(i);
+							if (employer.getJobOffer() != null && !employer.getJobOffer().isEmpty()) {
+								this.employers2[nEmployers] = employer;
+								nEmployers++;
 							}
 						}
 					}
 
-					Collections.shuffle(employers2, getRandom());
-					Collections.shuffle(jobSeekers, getRandom());
+					shuffle(this.employers2, nEmployers, phaseRandom);
+					shuffle(this.jobSeekers, nSeekers, phaseRandom);
+
+					final int hires = batch ? this.matchBatch(nSeekers, nEmployers)
+							: this.matchRandom(nSeekers, nEmployers);
 
-					for (Employer employer : employers2) {
-						if (jobSeekers.size() == 0) {
-							break;
+					profiler.stop(nSeekers, hires);
+					Arrays.fill(this.jobSeekers, 0, nSeekers, null);
+					Arrays.fill(this.employers2, 0, nEmployers, null);
+
+				}
+
+				/**
+				 * Clears the market in one batch.
+				 * 
+				 * The job offers are sorted once by wage (the ties in random
+				 * order). In random order, each job seeker samples
+				 * {@code applications} vacancies, uniformly among the vacancies
+				 * opened at the start of the matching (an employer is sampled
+				 * in proportion to its vacancies), and receives the best of
+				 * them that is not yet filled; the job seeker takes it if the
+				 * wage is acceptable. With a single random priority among the
+				 * job seekers, this is the outcome of the deferred acceptance
+				 * algorithm. The cost is O(e log e + s * applications * log e),
+				 * for e employers with vacancies and s job seekers.
+				 * 
+				 * @param nSeekers
+				 *            the number of job seekers.
+				 * @param nEmployers
+				 *            the number of employers with vacancies.
+				 * @return the number of hires.
+				 */
+				private int matchBatch(final int nSeekers, final int nEmployers) {
+					if (this.offers.length < nEmployers) {
+						this.offers = new JobOffer[this.employers2.length];
+						this.cumulated = new int[this.employers2.length];
+					}
+					for (int j = 0; j < nEmployers; j++) {
+						this.offers[j] = this.employers2[j].getJobOffer();
+					}
+					// The sort is stable: the ties keep the order of the shuffle.
+					Arrays.sort(this.offers, 0, nEmployers, byWage);
+					int vacancies = 0;
+					for (int j = 0; j < nEmployers; j++) {
+						vacancies += this.offers[j].size();
+						this.cumulated[j] = vacancies;
+					}
+					int hires = 0;
+					for (int i = 0; i < nSeekers && nEmployers > 0; i++) {
+						int best = nEmployers;
+						for (int k = 0; k < applications; k++) {
+							// The first offer whose cumulated vacancies exceed
+							// the sampled vacancy.
+							final int found = Arrays.binarySearch(this.cumulated, 0, nEmployers,
+									phaseRandom.nextInt(vacancies) + 1);
+							final int index = (found >= 0) ? found : -found - 1;
+							if (index < best && !this.offers[index].isEmpty()) {
+								best = index;
+							}
+						}
+						if (best < nEmployers) {
+							final Worker jobSeeker = this.jobSeekers[i];
+							jobSeeker.addJobOffer(this.offers[best]);
+							jobSeeker.chooseJob();
+							if (jobSeeker.isEmployed()) {
+								hires++;
+							}
 						}
+					}
+					Arrays.fill(this.offers, 0, nEmployers, null);
+					return hires;
+				}
+
+				/**
+				 * Matches the job seekers and the employers at random: each
+				 * employer sends 3 offers by vacancy to job seekers selected
+				 * at random, then each job seeker chooses among the offers
+				 * received.
+				 * 
+				 * @param nSeekers
+				 *            the number of job seekers.
+				 * @param nEmployers
+				 *            the number of employers with vacancies.
+				 * @return the number of hires.
+				 */
+				private int matchRandom(final int nSeekers, final int nEmployers) {
+					for (int j = 0; j < nEmployers && nSeekers > 0; j++) {
+						final Employer employer = this.employers2[j];
 						if (employer.getJobOffer() == null) {
 							throw new RuntimeException("Inconsistency");
 						}
 						final int size = employer.getJobOffer().size();
 
 						for (int i = 0; i < size * 3; i++) {
-							final Worker jobSeeker = jobSeekers
-									.get(getRandom().nextInt(jobSeekers.size()));
-							jobSeeker.addJobOffer(employer.getJobOffer());
+							final int index = phaseRandom.nextInt(nSeekers);
+							this.jobSeekers[index].addJobOffer(employer.getJobOffer());
+							this.solicited[index] = true;
 						}
 
 					}
 
-					for (Worker jobSeeker : jobSeekers) {
-						jobSeeker.chooseJob();
-					}
-
-					final long end = System.currentTimeMillis();
-
-					runtime += end - start;
+					// Only the job seekers that received an offer can be hired.
 
+					int hires = 0;
+					for (int i = 0; i < nSeekers; i++) {
+						if (this.solicited[i]) {
+							final Worker jobSeeker = this.jobSeekers[i];
+							jobSeeker.chooseJob();
+							if (jobSeeker.isEmployed()) {
+								hires++;
+							}
+							this.solicited[i] = false;
+						}
+					}
+					return hires;
 				}
 
 			};
@@ -251,6 +447,7 @@ public class BasicLaborMarket extends JamelObject implements Sector {
 			throw new RuntimeException(
 					"The sector " + name + " alreday contains a phase with the name '" + phaseName + "'");
 		}
+		this.profilers.put(phaseName, profiler);
 
 		return result;
 
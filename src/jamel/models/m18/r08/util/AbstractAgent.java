@@ -1,17 +1,124 @@
 package jamel.models.m18.r08.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 import jamel.models.m18.r08.data.AgentDataset;
 import jamel.models.m18.r08.data.BasicAgentDataset;
 import jamel.models.m18.r08.data.BasicPeriodDataset;
+import jamel.models.m18.r08.data.DiscardedPeriodDataset;
 import jamel.models.m18.r08.data.PeriodDataset;
 import jamel.util.Agent;
 import jamel.util.JamelObject;
+import jamel.util.Parameters;
 import jamel.util.Sector;
 
 /**
  * An abstract agent.
  */
-abstract public class AbstractAgent extends JamelObject implements Agent {
+abstract public class AbstractAgent extends JamelObject implements IdentifiedAgent, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A link to an agent, written in a checkpoint in place of the agent.
+	 */
+	private static class Link implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The ID of the agent.
+		 */
+		final private int id;
+
+		/**
+		 * The sector of the agent.
+		 */
+		final private Sector sector;
+
+		/**
+		 * Creates a new link.
+		 * 
+		 * @param sector
+		 *            the sector of the agent.
+		 * @param id
+		 *            the ID of the agent.
+		 */
+		private Link(final Sector sector, final int id) {
+			this.sector = sector;
+			this.id = id;
+		}
+
+	}
+
+	/**
+	 * Reads the links written by {@link #writeLinks(ObjectOutputStream, Agent[])}.
+	 * 
+	 * The links are resolved once all the agents of the checkpoint are read:
+	 * the specified action receives the linked agents then.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @param action
+	 *            the action that receives the linked agents.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of an agent cannot be found.
+	 */
+	protected static void readLinks(final ObjectInputStream in, final Consumer<Agent[]> action)
+			throws IOException, ClassNotFoundException {
+		final Object[] links = (Object[]) in.readObject();
+		Checkpoint.defer(in, () -> {
+			final Agent[] agents = new Agent[links.length];
+			for (int i = 0; i < links.length; i++) {
+				if (links[i] instanceof Link) {
+					final Link link = (Link) links[i];
+					agents[i] = ((BasicSector) link.sector).select(link.id);
+				} else {
+					agents[i] = (Agent) links[i];
+				}
+			}
+			action.accept(agents);
+		});
+	}
+
+	/**
+	 * Writes links to the specified agents (their sectors and IDs) into a
+	 * checkpoint, in place of the agents themselves.
+	 * 
+	 * Used by the objects that link an agent to other agents (its suppliers,
+	 * its owners...): followed by the serialization, these links would chain
+	 * the whole population on the stack. The agents are written anyway by
+	 * their sectors. An agent that has exited its sector is written in full.
+	 * 
+	 * @param out
+	 *            the output stream of the checkpoint.
+	 * @param agents
+	 *            the linked agents (can contain {@code null}).
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	protected static void writeLinks(final ObjectOutputStream out, final Agent[] agents) throws IOException {
+		final Object[] links = new Object[agents.length];
+		for (int i = 0; i < agents.length; i++) {
+			final Agent agent = agents[i];
+			final Sector sector = (agent instanceof AbstractAgent) ? ((AbstractAgent) agent).sector : null;
+			final int id = (sector != null) ? ((AbstractAgent) agent).getID() : -1;
+			if (sector instanceof BasicSector && ((BasicSector) sector).select(id) == agent) {
+				links[i] = new Link(sector, id);
+			} else {
+				links[i] = agent;
+			}
+		}
+		out.writeObject(links);
+	}
 
 	/**
 	 * The id of this agent.
@@ -34,6 +141,12 @@ abstract public class AbstractAgent extends JamelObject implements Agent {
 	 */
 	protected PeriodDataset periodDataset = null;
 
+	/**
+	 * The stream of random numbers of this agent ({@code null} until the
+	 * first draw as a member of its sector).
+	 */
+	private transient Random random = null;
+
 	/**
 	 * The parent sector.
 	 */
@@ -54,6 +167,66 @@ abstract public class AbstractAgent extends JamelObject implements Agent {
 		this.agentDataset = new BasicAgentDataset(this);
 	}
 
+	/**
+	 * Reads this agent from a checkpoint, and attaches it to the simulation of
+	 * its sector.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.setSimulation(this.sector.getSimulation());
+	}
+
+	/**
+	 * Returns the constants of the specified type, shared by the agents of
+	 * the sector.
+	 * 
+	 * @param <T>
+	 *            the type of the constants.
+	 * @param type
+	 *            the type of the constants.
+	 * @param parser
+	 *            the parser of the constants, called once by sector.
+	 * @return the constants.
+	 */
+	protected <T> T getConstants(final Class<T> type, final Function<Parameters, T> parser) {
+		final T result;
+		if (this.sector instanceof BasicSector) {
+			result = ((BasicSector) this.sector).getConstants(type, parser);
+		} else {
+			result = parser.apply(this.sector.getParameters());
+		}
+		return result;
+	}
+
+	/**
+	 * Connects this agent to the other sectors (opens its bank account...).
+	 * 
+	 * Called once, after the creation of all the agents of the simulation
+	 * (and not when the agent is restored from a checkpoint). Does nothing by
+	 * default.
+	 */
+	protected void connect() {
+		// Does nothing by default.
+	}
+
+	/**
+	 * Disconnects this agent from the other sectors (ends its contracts,
+	 * closes its bank account...).
+	 * 
+	 * The counterpart of {@link #connect()}, called when the agent exits,
+	 * after its removal from its sector. Does nothing by default.
+	 */
+	protected void disconnect() {
+		// Does nothing by default.
+	}
+
 	/**
 	 * Inserts the specified value at the specified position in the period
 	 * dataset.
@@ -75,7 +248,45 @@ abstract public class AbstractAgent extends JamelObject implements Agent {
 		}
 		this.open = false;
 
-		this.agentDataset.put(this.periodDataset);
+		if (this.periodDataset == DiscardedPeriodDataset.INSTANCE) {
+			this.agentDataset.skip();
+		} else {
+			this.agentDataset.put(this.periodDataset);
+		}
+	}
+
+	/**
+	 * Returns the stream of random numbers of this agent, in every phase, even
+	 * when the agent is called by another agent or by a market (see
+	 * {@link BasicSector#getAgentRandom(IdentifiedAgent)}).
+	 * 
+	 * While the agent is created, returns the random set by its sector for its
+	 * creation (the same stream).
+	 */
+	@Override
+	public Random getRandom() {
+		Random result = this.random;
+		if (result == null && this.sector instanceof BasicSector) {
+			result = ((BasicSector) this.sector).getAgentRandom(this);
+			this.random = result;
+		}
+		if (result == null) {
+			result = super.getRandom();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if this agent satisfies the specified criteria, on
+	 * its data of the current period (see
+	 * {@link BasicSector#satisfy(Agent, String)}).
+	 */
+	@Override
+	public boolean satisfy(final String criteria) {
+		if (!(this.sector instanceof BasicSector)) {
+			throw new RuntimeException("Not implemented for " + this.sector.getClass().getName());
+		}
+		return ((BasicSector) this.sector).satisfy(this, criteria);
 	}
 
 	@Override
@@ -102,7 +313,11 @@ abstract public class AbstractAgent extends JamelObject implements Agent {
 				throw new RuntimeException("Bad period");
 			}
 		}
-		this.periodDataset = new BasicPeriodDataset(this);
+		if (this.sector instanceof BasicSector && !((BasicSector) this.sector).isRecording()) {
+			this.periodDataset = DiscardedPeriodDataset.INSTANCE;
+		} else {
+			this.periodDataset = new BasicPeriodDataset(this);
+		}
 	}
 
 }
@@ -1,6 +1,12 @@
 package jamel.models.m18.r08.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
 import jamel.models.m18.r08.roles.Shareholder;
+import jamel.util.Agent;
 
 /*
  * 2018-04-11: jamel.models.m18.r07.util.AbstractEquity
@@ -12,7 +18,9 @@ import jamel.models.m18.r08.roles.Shareholder;
 /**
  * An abstract equity.
  */
-abstract public class AbstractEquity implements Equity {
+abstract public class AbstractEquity implements Equity, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * If this equity is canceled.
@@ -22,7 +30,7 @@ abstract public class AbstractEquity implements Equity {
 	/**
 	 * The owner of this equity.
 	 */
-	private final Shareholder owner;
+	private transient Shareholder owner;
 
 	/**
 	 * The value of the equity.
@@ -42,6 +50,35 @@ abstract public class AbstractEquity implements Equity {
 		this.value = value;
 	}
 
+	/**
+	 * Reads this equity from a checkpoint.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of a field cannot be found.
+	 */
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		AbstractAgent.readLinks(in, (agents) -> this.owner = (Shareholder) agents[0]);
+	}
+
+	/**
+	 * Writes this equity into a checkpoint, with links to its owner (see
+	 * {@link AbstractAgent#writeLinks(ObjectOutputStream, Agent[])}).
+	 * 
+	 * @param out
+	 *            the output stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	private void writeObject(final ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		AbstractAgent.writeLinks(out, new Agent[] { this.owner });
+	}
+
 	/**
 	 * Cancels this equity.
 	 */
@@ -49,6 +86,16 @@ abstract public class AbstractEquity implements Equity {
 		this.canceled = true;
 	}
 
+	/**
+	 * Sets the owner of this equity.
+	 * 
+	 * @param owner
+	 *            the new owner.
+	 */
+	protected void setOwner(final Shareholder owner) {
+		this.owner = owner;
+	}
+
 	/**
 	 * Sets the value of this equity.
 	 * 
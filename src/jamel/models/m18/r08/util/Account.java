@@ -135,4 +135,18 @@ public interface Account {
 	 */
 	void open();
 
+	/**
+	 * Terminates the account, when its holder exits.
+	 * 
+	 * The debt is repaid as far as the deposit allows it, the rest of the
+	 * debt is cancelled, and the rest of the deposit is transferred to the
+	 * heir. The account is then removed from the bank.
+	 * 
+	 * @param heir
+	 *            the account that receives the rest of the deposit (can be
+	 *            {@code null} if the deposit is to be empty after the
+	 *            repayment of the debt).
+	 */
+	void terminate(Account heir);
+
 }
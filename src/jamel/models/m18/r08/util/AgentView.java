@@ -0,0 +1,115 @@
+package jamel.models.m18.r08.util;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import jamel.util.Agent;
+
+/**
+ * A read-only, indexed view of the agents of a sector.
+ *
+ * The view does not copy the agents: it reads the list of the sector. It is
+ * stable for the duration of a phase (the agents of a sector are reordered
+ * only at the beginning of its own phases).
+ *
+ * @param <T>
+ *            the type of the agents (or of one of their roles).
+ */
+public class AgentView<T> extends AbstractList<T> implements RandomAccess {
+
+	/**
+	 * The agents of the sector.
+	 */
+	final private List<? extends Agent> agents;
+
+	/**
+	 * The indices of the agents of this view in the list of the sector, or
+	 * {@code null} if all the agents of the sector are in this view.
+	 */
+	final private int[] indices;
+
+	/**
+	 * The number of agents of this view ({@code -1} if all the agents of the
+	 * sector are in this view).
+	 */
+	final private int size;
+
+	/**
+	 * Creates a view of all the agents of a sector.
+	 *
+	 * @param agents
+	 *            the list of the agents of the sector.
+	 */
+	AgentView(final List<? extends Agent> agents) {
+		this(agents, null, -1);
+	}
+
+	/**
+	 * Creates a view of some agents of a sector.
+	 *
+	 * @param agents
+	 *            the list of the agents of the sector.
+	 * @param indices
+	 *            the indices of the agents of this view.
+	 * @param size
+	 *            the number of agents of this view.
+	 */
+	private AgentView(final List<? extends Agent> agents, final int[] indices, final int size) {
+		this.agents = agents;
+		this.indices = indices;
+		this.size = size;
+	}
+
+	/**
+	 * Returns a view of the agents of this view that satisfy the specified
+	 * predicate.
+	 *
+	 * The filtered view is a snapshot: the predicate is evaluated once, for
+	 * each agent, when the filtered view is created.
+	 *
+	 * @param predicate
+	 *            the predicate.
+	 * @return a view of the agents that satisfy the predicate.
+	 */
+	public AgentView<T> filter(final Predicate<? super T> predicate) {
+		final int n = this.size();
+		final int[] selection = new int[n];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (predicate.test(this.get(i))) {
+				selection[count] = (this.indices == null) ? i : this.indices[i];
+				count++;
+			}
+		}
+		return new AgentView<>(this.agents, selection, count);
+	}
+
+	@Override
+	public void forEach(final Consumer<? super T> action) {
+		final int n = this.size();
+		for (int i = 0; i < n; i++) {
+			action.accept(this.get(i));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T get(final int index) {
+		if (this.indices == null) {
+			return (T) this.agents.get(index);
+		}
+		if (index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+		}
+		return (T) this.agents.get(this.indices[index]);
+	}
+
+	@Override
+	public int size() {
+		return (this.indices == null) ? this.agents.size() : this.size;
+	}
+
+}
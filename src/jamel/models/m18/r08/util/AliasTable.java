@@ -0,0 +1,102 @@
+package jamel.models.m18.r08.util;
+
+import java.util.Random;
+
+/**
+ * A table for weighted draws, with the alias method (Vose).
+ *
+ * The table is built in O(n) and each draw costs O(1). The arrays are reused
+ * from one build to the next.
+ */
+class AliasTable {
+
+	/**
+	 * The alias of each index.
+	 */
+	private int[] alias = new int[0];
+
+	/**
+	 * The indices whose scaled weight is at least 1 (work array).
+	 */
+	private int[] large = new int[0];
+
+	/**
+	 * The probability to keep each index (rather than its alias).
+	 */
+	private double[] probability = new double[0];
+
+	/**
+	 * The number of indices.
+	 */
+	private int size = 0;
+
+	/**
+	 * The indices whose scaled weight is less than 1 (work array).
+	 */
+	private int[] small = new int[0];
+
+	/**
+	 * Builds the table for the specified weights.
+	 *
+	 * @param weights
+	 *            the weights (non-negative).
+	 * @param n
+	 *            the number of weights to be read.
+	 * @param total
+	 *            the sum of the weights, strictly positive.
+	 */
+	void build(final double[] weights, final int n, final double total) {
+		if (!(total > 0)) {
+			throw new IllegalArgumentException("Bad total: " + total);
+		}
+		if (this.probability.length < n) {
+			this.alias = new int[n];
+			this.large = new int[n];
+			this.probability = new double[n];
+			this.small = new int[n];
+		}
+		this.size = n;
+		int nSmall = 0;
+		int nLarge = 0;
+		for (int i = 0; i < n; i++) {
+			this.probability[i] = weights[i] * n / total;
+			if (this.probability[i] < 1) {
+				this.small[nSmall++] = i;
+			} else {
+				this.large[nLarge++] = i;
+			}
+		}
+		while (nSmall > 0 && nLarge > 0) {
+			final int less = this.small[--nSmall];
+			final int more = this.large[--nLarge];
+			this.alias[less] = more;
+			this.probability[more] += this.probability[less] - 1;
+			if (this.probability[more] < 1) {
+				this.small[nSmall++] = more;
+			} else {
+				this.large[nLarge++] = more;
+			}
+		}
+		// The remaining indices (rounding errors) are kept with certainty.
+		while (nLarge > 0) {
+			this.probability[this.large[--nLarge]] = 1;
+		}
+		while (nSmall > 0) {
+			this.probability[this.small[--nSmall]] = 1;
+		}
+	}
+
+	/**
+	 * Draws an index at random, with a probability proportional to its
+	 * weight.
+	 *
+	 * @param random
+	 *            the random.
+	 * @return the index drawn.
+	 */
+	int draw(final Random random) {
+		final int i = random.nextInt(this.size);
+		return (random.nextDouble() < this.probability[i]) ? i : this.alias[i];
+	}
+
+}
@@ -1,5 +1,7 @@
 package jamel.models.m18.r08.util;
 
+import java.io.Serializable;
+
 import jamel.Jamel;
 
 /**
@@ -7,7 +9,9 @@ import jamel.Jamel;
  * 
  * Always positive.
  */
-abstract public class Amount {
+abstract public class Amount implements Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * The amount.
@@ -5,6 +5,8 @@ package jamel.models.m18.r08.util;
  */
 public class BasicAmount extends Amount {
 
+	private static final long serialVersionUID = 1L;
+
 	/**
 	 * Creates a new empty {@code Amount}.
 	 */
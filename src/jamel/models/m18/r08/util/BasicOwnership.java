@@ -1,5 +1,6 @@
 package jamel.models.m18.r08.util;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -9,16 +10,17 @@ import jamel.util.Agent;
 /**
  * A basic implementation of the ownership interface.
  */
-public class BasicOwnership implements Ownership {
+public class BasicOwnership implements Ownership, Serializable {
+
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Cancels and removes all of the equities in this ownership.
 	 * The total value is set to zero.
 	 */
 	public void clear() {
-		while (this.equities.size() > 0) {
+		while (!this.equities.isEmpty()) {
 			this.equities.removeFirst().cancel();
-			this.equities.clear();
 		}
 		this.totalValue = 0;
 	}
@@ -28,6 +30,8 @@ public class BasicOwnership implements Ownership {
 	 */
 	private class BasicEquity extends AbstractEquity {
 
+		private static final long serialVersionUID = 1L;
+
 		/**
 		 * The number of shares.
 		 */
@@ -50,6 +54,24 @@ public class BasicOwnership implements Ownership {
 			return BasicOwnership.this.company.getName();
 		}
 
+		@Override
+		public Equity transfer(final Shareholder heir) {
+			if (this.isCanceled()) {
+				throw new RuntimeException("Canceled");
+			}
+			for (final BasicEquity equity : BasicOwnership.this.equities) {
+				if (equity != this && equity.getOwner() == heir) {
+					equity.setValue(equity.getValue() + this.getValue());
+					equity.share += this.share;
+					BasicOwnership.this.equities.remove(this);
+					this.cancel();
+					return equity;
+				}
+			}
+			this.setOwner(heir);
+			return this;
+		}
+
 	}
 
 	/**
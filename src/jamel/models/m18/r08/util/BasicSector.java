@@ -1,15 +1,26 @@
 package jamel.models.m18.r08.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import jamel.Jamel;
 import jamel.data.DynamicSeries;
@@ -27,6 +38,22 @@ import jamel.util.Simulation;
  */
 public class BasicSector extends JamelObject implements Sector {
 
+	/**
+	 * The marks of the agents drawn by a sampling, one set for each thread.
+	 * 
+	 * An agent is marked if its mark equals the current stamp: the marks are
+	 * cleared in O(1) by incrementing the stamp.
+	 */
+	private static class SampleMarks {
+
+		/** The marks, by index of agent. */
+		private int[] marks = new int[0];
+
+		/** The current stamp. */
+		private int stamp = 0;
+
+	}
+
 	/**
 	 * Returns the specified action.
 	 * 
@@ -52,54 +79,115 @@ public class BasicSector extends JamelObject implements Sector {
 	}
 
 	/**
-	 * Creates and returns a new agent.
-	 * 
-	 * @param sector
-	 *            the sector.
-	 * @param agentClass
-	 *            the agent class.
-	 * 
-	 * @param id
-	 *            the id of the agent to be created.
-	 * @return a new agent.
+	 * The class of the agents that populate the sector.
 	 */
-	private static Agent getNewAgent(final Sector sector, Class<? extends Agent> agentClass, final int id) {
-		final Agent result;
-		try {
-			result = agentClass.getConstructor(Sector.class, int.class).newInstance(sector, id);
-		} catch (Exception e) {
-			final String message = "Something went wrong while creating a new agent.";
-			Jamel.println("***");
-			Jamel.println(message);
-			Jamel.println("sector.getName(): " + sector.getName());
-			Jamel.println("agentClass.getName(): " + agentClass.getName());
-			Jamel.println("id: " + id);
-			Jamel.println();
-			throw new RuntimeException(message, e);
-		}
-		return result;
-	}
+	final private Class<? extends Agent> agentClass;
 
 	/**
-	 * The class of the agents that populate the sector.
+	 * The constructor of the agents, {@code (Sector, int)Agent}, resolved
+	 * once.
 	 */
-	final private Class<? extends Agent> agentClass;
+	final private MethodHandle agentConstructor;
 
 	/**
 	 * The collection of agents that populate this sector.
 	 */
-	final private ArrayList<Agent> agents = new ArrayList<>();
+	final private ArrayList<IdentifiedAgent> agents = new ArrayList<>();
+
+	/**
+	 * The read-only view of the agents of this sector.
+	 */
+	final private AgentView<Agent> view = new AgentView<>(this.agents);
+
+	/**
+	 * The table of the weighted selection.
+	 */
+	final private AliasTable aliasTable = new AliasTable();
+
+	/**
+	 * The constants shared by the agents of this sector, by type.
+	 */
+	final private Map<Class<?>, Object> constants = new HashMap<>();
+
+	/**
+	 * The compiled criteria of the selections, by source.
+	 */
+	final private Map<String, Criteria> criterias = new HashMap<>();
 
 	/**
 	 * The data manager.
 	 */
 	final private SectorDataManager dataManager;
 
+	/**
+	 * The number of agents that enter this sector at the next opening.
+	 */
+	private int entering = 0;
+
+	/**
+	 * The agents that exit this sector at the next opening.
+	 */
+	final private List<IdentifiedAgent> exiting = new ArrayList<>();
+
+	/**
+	 * The IDs released by the agents that exited, recycled by the next
+	 * entries (a stack).
+	 */
+	private int[] freeIDs = new int[0];
+
+	/**
+	 * The number of IDs in the stack of the free IDs.
+	 */
+	private int freeCount = 0;
+
+	/**
+	 * The next ID never used.
+	 */
+	private int nextID = 0;
+
+	/**
+	 * The next serial number.
+	 */
+	private int nextSerial = 0;
+
+	/**
+	 * The positions of the agents in the list of the agents, by ID ({@code -1}
+	 * for a free ID).
+	 */
+	private int[] positions = new int[0];
+
+	/**
+	 * The streams of random numbers of the agents, by ID ({@code null} for a
+	 * free ID).
+	 */
+	private Random[] randoms = new Random[0];
+
+	/**
+	 * The serial numbers of the agents, by ID.
+	 * 
+	 * Unlike the IDs, the serial numbers are never recycled: they name the
+	 * streams of random numbers of the agents, so that an agent that enters
+	 * does not inherit the stream of the agent whose ID it takes.
+	 */
+	private int[] serials = new int[0];
+
 	/**
 	 * The name of the sector.
 	 */
 	final private String name;
 
+	/**
+	 * A flag that indicates whether the initial agents are created
+	 * concurrently.
+	 */
+	final private boolean parallelPopulation;
+
+	/**
+	 * A flag that indicates whether the data of the agents are recorded
+	 * during the warm-up of the simulation.
+	 */
+	final private boolean recordWarmup;
+
 	/**
 	 * The parameters of the sector.
 	 */
@@ -110,6 +198,50 @@ public class BasicSector extends JamelObject implements Sector {
 	 */
 	final private Map<String, Phase> phases = new HashMap<>();
 
+	/**
+	 * The profilers of the phases, accessible by the names of the phases.
+	 */
+	final private Map<String, PhaseProfiler> profilers = new HashMap<>();
+
+	/**
+	 * The share of the weighted selection that is drawn uniformly (attribute
+	 * {@code selectionMixing} of the sector, {@code 0.05} by default).
+	 * 
+	 * The weights are those of the previous period: without this share, an
+	 * agent with a zero weight (eg. a firm that has just entered, and has not
+	 * sold anything yet) could never be selected, and would never get a
+	 * positive weight.
+	 */
+	final private double selectionMixing;
+
+	/**
+	 * The index of the data that weights the selection, or {@code -1} for a
+	 * uniform selection.
+	 */
+	final private int selectionWeight;
+
+	/**
+	 * The agents of the weighted selection, in the order of the weights
+	 * (the agents of the sector are reordered by its phases).
+	 */
+	private Agent[] weightedAgents = new Agent[0];
+
+	/**
+	 * The weights of the agents, reused from one period to the next.
+	 */
+	private double[] weights = new double[0];
+
+	/**
+	 * A flag that indicates whether the weighted selection is available in
+	 * the current period.
+	 */
+	private boolean weighted = false;
+
+	/**
+	 * The marks used by the sampling, for each thread.
+	 */
+	final private ThreadLocal<SampleMarks> sampleMarks = ThreadLocal.withInitial(SampleMarks::new);
+
 	/**
 	 * Creates a new basic sector.
 	 * 
@@ -123,6 +255,9 @@ public class BasicSector extends JamelObject implements Sector {
 		super(simulation);
 		this.params = params;
 		this.name = this.params.getAttribute("name");
+		this.recordWarmup = !this.params.hasAttribute("recordWarmup")
+				|| Boolean.parseBoolean(this.params.getAttribute("recordWarmup"));
+		this.parallelPopulation = Boolean.parseBoolean(this.params.getAttribute("parallelPopulation"));
 
 		// Initializes the type of the agents.
 
@@ -135,8 +270,8 @@ public class BasicSector extends JamelObject implements Sector {
 			agentClassName = attributeAgentClassName;
 			try {
 				final Class<?> klass = Class.forName(agentClassName);
-				if (!Agent.class.isAssignableFrom(klass)) {
-					throw new RuntimeException("Agent class is not assignable from " + klass.getName());
+				if (!IdentifiedAgent.class.isAssignableFrom(klass)) {
+					throw new RuntimeException("IdentifiedAgent class is not assignable from " + klass.getName());
 					// TODO c'est une erreur du scénario : à traiter comme
 					// telle. Balancer un message d'erreur à la GUI qui display
 					// une box.
@@ -147,9 +282,33 @@ public class BasicSector extends JamelObject implements Sector {
 			} catch (ClassNotFoundException e) {
 				throw new RuntimeException("Something went wrong while creating the sector \'" + this.name + "\'", e);
 			}
+			try {
+				this.agentConstructor = MethodHandles.publicLookup()
+						.findConstructor(this.agentClass, MethodType.methodType(void.class, Sector.class, int.class))
+						.asType(MethodType.methodType(IdentifiedAgent.class, Sector.class, int.class));
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new RuntimeException("Sector \'" + this.name + "\': no public constructor (Sector, int) in "
+						+ this.agentClass.getName(), e);
+			}
 		}
 
 		this.dataManager = new SectorDataManager(this.agents, this);
+
+		// The optional weighted selection.
+
+		if (this.params.hasAttribute("selectionWeight")) {
+			if (!this.recordWarmup) {
+				throw new RuntimeException("Sector \'" + this.name + "\': selectionWeight requires recordWarmup");
+			}
+			this.selectionWeight = this.dataManager.getDataIndex(this.params.getAttribute("selectionWeight"));
+		} else {
+			this.selectionWeight = -1;
+		}
+		this.selectionMixing = this.params.hasAttribute("selectionMixing")
+				? this.params.getDoubleAttribute("selectionMixing") : 0.05;
+		if (!(this.selectionMixing >= 0 && this.selectionMixing < 1)) {
+			throw new RuntimeException("Sector \'" + this.name + "\': bad selectionMixing: " + this.selectionMixing);
+		}
 	}
 
 	/**
@@ -162,29 +321,338 @@ public class BasicSector extends JamelObject implements Sector {
 	private Expression getSectorDataAccess(String arg) {
 		final Expression result;
 		final String[] args = arg.split("\\.");
-		if (args[0].equals("phase") && args[2].equals("runtime")) {
-			final Phase phase = this.phases.get(args[1]);
-			result = new Expression() {
+		if (args[0].equals("phase") && args.length > 2) {
+			final PhaseProfiler profiler = this.profilers.get(args[1]);
+			if (profiler == null) {
+				throw new RuntimeException("Unknown phase: '" + args[1] + "' in '" + arg + "'");
+			}
+			result = profiler.getDataAccess(Arrays.copyOfRange(args, 2, args.length));
+		} else {
+			throw new RuntimeException("Bad key: '" + args[0] + "' in '" + arg + "'");
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the stream of random numbers of the specified agent, named after
+	 * its serial number.
+	 * 
+	 * @param agent
+	 *            the agent.
+	 * @return the stream of random numbers of the specified agent, or
+	 *         {@code null} if the agent is not a member of this sector (eg.
+	 *         while it is created).
+	 */
+	Random getAgentRandom(final IdentifiedAgent agent) {
+		final int id = agent.getID();
+		if (id >= this.positions.length || this.positions[id] == -1
+				|| this.agents.get(this.positions[id]) != agent) {
+			return null;
+		}
+		return this.randoms[id];
+	}
+
+	/**
+	 * Creates and returns the next agent, with the stream of random numbers of
+	 * the serial number it will bear (see {@link #getNewAgents(int)}).
+	 * 
+	 * @param id
+	 *            the id of the agent to be created.
+	 * @return a new agent.
+	 */
+	private IdentifiedAgent getNextAgent(final int id) {
+		final BasicSimulation simulation = (BasicSimulation) this.getSimulation();
+		simulation.setLocalRandom(simulation.getRandomStream("agent/" + this.name + "." + this.nextSerial));
+		try {
+			return this.getNewAgent(id);
+		} finally {
+			simulation.setLocalRandom(null);
+		}
+	}
+
+	/**
+	 * Creates and returns a new agent.
+	 * 
+	 * @param id
+	 *            the id of the agent to be created.
+	 * @return a new agent.
+	 */
+	private IdentifiedAgent getNewAgent(final int id) {
+		final IdentifiedAgent result;
+		try {
+			result = (IdentifiedAgent) this.agentConstructor.invokeExact((Sector) this, id);
+		} catch (Throwable e) {
+			final String message = "Something went wrong while creating a new agent.";
+			Jamel.println("***");
+			Jamel.println(message);
+			Jamel.println("sector.getName(): " + this.name);
+			Jamel.println("agentClass.getName(): " + this.agentClass.getName());
+			Jamel.println("id: " + id);
+			Jamel.println();
+			throw new RuntimeException(message, e);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates and returns the specified number of new agents, concurrently.
+	 * 
+	 * Each agent is created with its own stream of random numbers (the one
+	 * used by the parallel phases), so that the result does not depend on the
+	 * scheduling of the threads.
+	 * 
+	 * @param n
+	 *            the number of agents to be created.
+	 * @return the new agents, ordered by id.
+	 */
+	private IdentifiedAgent[] getNewAgents(final int n) {
+		final BasicSimulation simulation = (BasicSimulation) this.getSimulation();
+		final Random[] randoms = new Random[n];
+		for (int i = 0; i < n; i++) {
+			// The serial number of an initial agent is its ID.
+			randoms[i] = simulation.getRandomStream("agent/" + this.name + "." + i);
+		}
+		final IdentifiedAgent[] result = new IdentifiedAgent[n];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			simulation.setLocalRandom(randoms[i]);
+			try {
+				result[i] = this.getNewAgent(i);
+			} finally {
+				simulation.setLocalRandom(null);
+			}
+		});
+		return result;
+	}
 
-				@Override
-				public Double getValue() {
-					return (double) phase.getRuntime();
+	/**
+	 * Builds the table of the weighted selection, from the data of the
+	 * previous period.
+	 */
+	private void updateWeights() {
+		final int size = this.agents.size();
+		if (this.weights.length < size) {
+			this.weights = new double[size];
+			this.weightedAgents = new Agent[size];
+		}
+		final int t = this.getPeriod() - 1;
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			this.weightedAgents[i] = this.agents.get(i);
+			final Double value = this.weightedAgents[i].getData(this.selectionWeight, t);
+			this.weights[i] = (value == null || !(value > 0)) ? 0 : value;
+			total += this.weights[i];
+		}
+		this.weighted = total > 0;
+		if (this.weighted) {
+			if (this.selectionMixing > 0) {
+				// Each agent gets the share selectionMixing / size of the
+				// draws, whatever its weight.
+				final double floor = total * this.selectionMixing / ((1 - this.selectionMixing) * size);
+				for (int i = 0; i < size; i++) {
+					this.weights[i] += floor;
 				}
+				total += floor * size;
+			}
+			this.aliasTable.build(this.weights, size, total);
+		}
+	}
+
+	/**
+	 * Updates the positions of the agents, after a change of their order.
+	 */
+	private void updatePositions() {
+		for (int i = 0; i < this.agents.size(); i++) {
+			this.positions[this.agents.get(i).getID()] = i;
+		}
+	}
+
+	/**
+	 * Appends the specified agent to the list of the agents.
+	 * 
+	 * @param agent
+	 *            the agent to be added.
+	 * @param serial
+	 *            the serial number of the agent, that names its stream of
+	 *            random numbers.
+	 */
+	private void addAgent(final IdentifiedAgent agent, final int serial) {
+		final int id = agent.getID();
+		if (id >= this.positions.length) {
+			final int length = this.positions.length;
+			this.positions = Arrays.copyOf(this.positions, Math.max(id + 1, 2 * length));
+			Arrays.fill(this.positions, length, this.positions.length, -1);
+		}
+		if (this.positions[id] != -1) {
+			throw new RuntimeException("Sector \'" + this.name + "\': agent ID already used: " + id);
+		}
+		if (id >= this.serials.length) {
+			this.serials = Arrays.copyOf(this.serials, this.positions.length);
+			this.randoms = Arrays.copyOf(this.randoms, this.positions.length);
+		}
+		this.positions[id] = this.agents.size();
+		this.serials[id] = serial;
+		this.randoms[id] = ((BasicSimulation) this.getSimulation())
+				.getRandomStream("agent/" + this.name + "." + serial);
+		this.nextSerial = Math.max(this.nextSerial, serial + 1);
+		this.agents.add(agent);
+		this.nextID = Math.max(this.nextID, id + 1);
+	}
 
-				@Override
-				public String toString() {
-					return name + ".phase." + args[1] + ".runtime";
+	/**
+	 * Removes the specified agent from the list of the agents, in O(1): the
+	 * last agent of the list takes its place.
+	 * 
+	 * @param agent
+	 *            the agent to be removed.
+	 * @return {@code true} if the agent was removed, {@code false} if it was
+	 *         not in this sector (eg. it had already exited).
+	 */
+	private boolean removeAgent(final IdentifiedAgent agent) {
+		final int id = agent.getID();
+		if (id >= this.positions.length || this.positions[id] == -1
+				|| this.agents.get(this.positions[id]) != agent) {
+			return false;
+		}
+		final int position = this.positions[id];
+		final IdentifiedAgent last = this.agents.remove(this.agents.size() - 1);
+		if (last != agent) {
+			this.agents.set(position, last);
+			this.positions[last.getID()] = position;
+		}
+		this.positions[id] = -1;
+		if (this.freeCount == this.freeIDs.length) {
+			this.freeIDs = Arrays.copyOf(this.freeIDs, Math.max(8, 2 * this.freeCount));
+		}
+		this.freeIDs[this.freeCount] = id;
+		this.freeCount++;
+		// The serial numbers are never recycled: the stream will not be used
+		// again.
+		((BasicSimulation) this.getSimulation()).removeRandomStream("agent/" + this.name + "." + this.serials[id]);
+		this.randoms[id] = null;
+		return true;
+	}
+
+	/**
+	 * Applies the exits and the entries scheduled since the last opening.
+	 * 
+	 * The exits are applied first: their IDs are recycled by the entries. The
+	 * exiting agents are disconnected from the other sectors once removed, and
+	 * the new agents are connected as soon as they are created.
+	 */
+	private void updatePopulation() {
+		for (final IdentifiedAgent agent : this.exiting) {
+			if (this.removeAgent(agent)) {
+				this.dataManager.remove(agent);
+				if (agent instanceof AbstractAgent) {
+					((AbstractAgent) agent).disconnect();
 				}
+			}
+		}
+		this.exiting.clear();
+		for (int i = 0; i < this.entering; i++) {
+			final int id;
+			if (this.freeCount > 0) {
+				this.freeCount--;
+				id = this.freeIDs[this.freeCount];
+			} else {
+				id = this.nextID;
+			}
+			final IdentifiedAgent agent = this.getNextAgent(id);
+			this.addAgent(agent, this.nextSerial);
+			this.dataManager.add(agent);
+			if (agent instanceof AbstractAgent) {
+				((AbstractAgent) agent).connect();
+			}
+		}
+		this.entering = 0;
+	}
 
-			};
-		} else {
-			throw new RuntimeException("Bad key: '" + args[0] + "' in '" + arg + "'");
+	/**
+	 * Performs the given action for each agent of this sector, in turn.
+	 * 
+	 * As in a parallel phase, each agent acts with its own stream of random
+	 * numbers, so that a phase gives the same results whether it runs in
+	 * parallel or not.
+	 * 
+	 * @param action
+	 *            the action to be performed.
+	 */
+	private void forEachSequential(final Consumer<? super Agent> action) {
+		final BasicSimulation simulation = (BasicSimulation) this.getSimulation();
+		try {
+			for (int i = 0; i < this.agents.size(); i++) {
+				final IdentifiedAgent agent = this.agents.get(i);
+				simulation.setLocalRandom(this.randoms[agent.getID()]);
+				action.accept(agent);
+			}
+		} finally {
+			simulation.setLocalRandom(null);
 		}
-		return result;
+	}
+
+	/**
+	 * Performs the given action for each agent of this sector, concurrently.
+	 * 
+	 * @param action
+	 *            the action to be performed.
+	 * @param profiler
+	 *            the profiler of the phase, that counts the allocations of the
+	 *            workers.
+	 */
+	private void forEachParallel(final Consumer<? super Agent> action, final PhaseProfiler profiler) {
+		final BasicSimulation simulation = (BasicSimulation) this.getSimulation();
+		final int size = this.agents.size();
+		final Random[] randoms = new Random[size];
+		for (int i = 0; i < size; i++) {
+			randoms[i] = this.randoms[this.agents.get(i).getID()];
+		}
+		final int threshold = Math.max(1, size / (ForkJoinPool.getCommonPoolParallelism() * 4));
+
+		@SuppressWarnings("serial")
+		class Chunk extends RecursiveAction {
+
+			/** The index of the first agent of this chunk. */
+			final private int from;
+
+			/** The index following the last agent of this chunk. */
+			final private int to;
+
+			Chunk(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected void compute() {
+				if (this.to - this.from <= threshold) {
+					final long alloc = PhaseProfiler.allocatedBytes();
+					try {
+						for (int i = this.from; i < this.to; i++) {
+							simulation.setLocalRandom(randoms[i]);
+							action.accept(agents.get(i));
+						}
+					} finally {
+						simulation.setLocalRandom(null);
+					}
+					profiler.addAllocation(PhaseProfiler.allocatedBytes() - alloc);
+				} else {
+					final int middle = (this.from + this.to) >>> 1;
+					invokeAll(new Chunk(this.from, middle), new Chunk(middle, this.to));
+				}
+			}
+
+		}
+
+		ForkJoinPool.commonPool().invoke(new Chunk(0, size));
 	}
 
 	/**
 	 * Populates this sector.
+	 * 
+	 * The agents are created concurrently if the attribute
+	 * {@code parallelPopulation} of the sector is {@code true}: their
+	 * constructors must not interact with the other agents (the connections
+	 * are made later, see {@link #connect()}).
 	 */
 	void populate() {
 
@@ -200,28 +668,274 @@ public class BasicSector extends JamelObject implements Sector {
 			initialPopulation = Integer.parseInt(initialPopulationString);
 		}
 		this.agents.ensureCapacity(initialPopulation);
-		for (int i = 0; i < initialPopulation; i++) {
-			this.agents.add(getNewAgent(this, agentClass, i));
+		if (this.parallelPopulation) {
+			for (final IdentifiedAgent agent : this.getNewAgents(initialPopulation)) {
+				// The serial number of an initial agent is its ID.
+				this.addAgent(agent, agent.getID());
+			}
+		} else {
+			for (int i = 0; i < initialPopulation; i++) {
+				this.addAgent(this.getNextAgent(i), i);
+			}
 		}
 		this.dataManager.put(this.agents);
 
 	}
 
+	/**
+	 * Connects the agents of this sector to the other sectors (bank
+	 * accounts...).
+	 * 
+	 * Called once, when all the sectors are populated.
+	 */
+	void connect() {
+		for (int i = 0; i < this.agents.size(); i++) {
+			final Agent agent = this.agents.get(i);
+			if (agent instanceof AbstractAgent) {
+				((AbstractAgent) agent).connect();
+			}
+		}
+	}
+
+	/**
+	 * Returns {@code true} if agents enter or exit this sector at the next
+	 * opening.
+	 * 
+	 * @return {@code true} if the population changes at the next opening.
+	 */
+	private synchronized boolean isPopulationChanging() {
+		return this.entering > 0 || !this.exiting.isEmpty();
+	}
+
+	/**
+	 * Populates this sector with the agents read from a checkpoint.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 * @throws ClassNotFoundException
+	 *             if the class of an agent cannot be found.
+	 */
+	@SuppressWarnings("unchecked")
+	void readAgents(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+		if (!this.agents.isEmpty()) {
+			throw new RuntimeException("Already populated");
+		}
+		final List<IdentifiedAgent> agents = (List<IdentifiedAgent>) in.readObject();
+		final List<IdentifiedAgent> aggregated = (List<IdentifiedAgent>) in.readObject();
+		this.freeIDs = (int[]) in.readObject();
+		this.freeCount = this.freeIDs.length;
+		for (int i = 0; i < this.freeCount; i++) {
+			this.nextID = Math.max(this.nextID, this.freeIDs[i] + 1);
+		}
+		this.exiting.addAll((List<IdentifiedAgent>) in.readObject());
+		this.entering = in.readInt();
+		final int[] serials = (int[]) in.readObject();
+		for (final IdentifiedAgent agent : agents) {
+			this.addAgent(agent, serials[agent.getID()]);
+		}
+		this.dataManager.put(aggregated);
+		this.nextSerial = in.readInt();
+	}
+
+	/**
+	 * Writes the agents of this sector into a checkpoint.
+	 * 
+	 * The agents are written twice: in the order in which they act (the
+	 * result of the last shuffle) and in the order in which their data are
+	 * aggregated, so that the restored sector gives exactly the same results.
+	 * The free IDs, the scheduled entries and exits and the serial numbers
+	 * follow.
+	 * 
+	 * @param out
+	 *            the output stream of the checkpoint.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	void writeAgents(final ObjectOutputStream out) throws IOException {
+		out.writeObject(new ArrayList<>(this.agents));
+		out.writeObject(new ArrayList<>(this.dataManager.getAgents()));
+		out.writeObject(Arrays.copyOf(this.freeIDs, this.freeCount));
+		out.writeObject(new ArrayList<>(this.exiting));
+		out.writeInt(this.entering);
+		out.writeObject(Arrays.copyOf(this.serials, this.nextID));
+		out.writeInt(this.nextSerial);
+	}
+
+	/**
+	 * Returns the constants of the specified type, shared by all the agents of
+	 * this sector.
+	 * 
+	 * The constants are parsed once, from the parameters of this sector (see
+	 * {@link #getParameters()}).
+	 * 
+	 * @param <T>
+	 *            the type of the constants.
+	 * @param type
+	 *            the type of the constants.
+	 * @param parser
+	 *            the parser of the constants.
+	 * @return the constants.
+	 */
+	public synchronized <T> T getConstants(final Class<T> type, final Function<Parameters, T> parser) {
+		Object result = this.constants.get(type);
+		if (result == null) {
+			result = parser.apply(this.getParameters());
+			this.constants.put(type, result);
+		}
+		return type.cast(result);
+	}
+
 	@Override
 	public void close() {
 		for (int i = 0; i < this.agents.size(); i++) {
 			this.agents.get(i).close();
 		}
+		this.dataManager.publish();
 	}
 
-	@Override
-	public void doEvent(Parameters event) {
+	/**
+	 * Compiles the specified event into an action of this sector (see
+	 * {@link #doEvent(Parameters)}).
+	 * 
+	 * The action, the criteria of the selection and the number of agents are
+	 * resolved once, when the event is compiled, and not each time the event
+	 * is executed.
+	 * 
+	 * @param event
+	 *            the description of the event.
+	 * @return the action of the event.
+	 */
+	public Runnable compileEvent(final Parameters event) {
+		final String action = event.getAttribute("action");
 		final String criteria = event.getAttribute("select");
-		for (Agent agent : this.agents) {
-			if (criteria.isEmpty() || criteria.equals("*") || agent.satisfy(criteria)) {
-				agent.doEvent(event);
+		final Runnable result;
+		if (action.equals("enter")) {
+			final int n = Integer.parseInt(event.getAttribute("n"));
+			result = () -> this.enter(n);
+		} else if (action.equals("exit") && event.hasAttribute("n")) {
+			final int n = Integer.parseInt(event.getAttribute("n"));
+			result = () -> {
+				for (final Agent agent : this.selectList(n)) {
+					this.exit((IdentifiedAgent) agent);
+				}
+			};
+		} else if (action.equals("exit")) {
+			if (criteria.isEmpty()) {
+				throw new RuntimeException("Sector \'" + this.name + "\': exit: missing attribute: select or n");
 			}
+			final Criteria selection = this.getCriteria(criteria);
+			result = () -> {
+				final int t = this.getPeriod();
+				for (IdentifiedAgent agent : this.agents) {
+					if (selection.test(agent, t)) {
+						this.exit(agent);
+					}
+				}
+			};
+		} else {
+			final Criteria selection = this.getCriteria(criteria);
+			result = () -> {
+				final int t = this.getPeriod();
+				for (Agent agent : this.agents) {
+					if (selection.test(agent, t)) {
+						agent.doEvent(event);
+					}
+				}
+			};
 		}
+		return result;
+	}
+
+	/**
+	 * Executes the specified event.
+	 * 
+	 * Two actions are handled by the sector itself:
+	 * {@code <do action="enter" n="10" sector="Firms" />} creates new agents,
+	 * {@code <do action="exit" select="..." sector="Firms" />} removes the
+	 * selected agents (or {@code n} agents selected at random). The new
+	 * agents enter and the removed agents exit at the next opening of the
+	 * sector. The other events are passed to the selected agents.
+	 * 
+	 * The attribute {@code select} is a criteria on the data of the agents in
+	 * the current period, eg. {@code select="money>1000 && employed==1"},
+	 * compiled once (see {@link #satisfy(Agent, String)}).
+	 */
+	@Override
+	public void doEvent(Parameters event) {
+		this.compileEvent(event).run();
+	}
+
+	/**
+	 * Returns the compiled criteria.
+	 * 
+	 * @param criteria
+	 *            the source of the criteria.
+	 * @return the compiled criteria.
+	 */
+	private synchronized Criteria getCriteria(final String criteria) {
+		Criteria result = this.criterias.get(criteria);
+		if (result == null) {
+			result = Criteria.compile(criteria, this.dataManager::getDataIndex);
+			this.criterias.put(criteria, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if the specified agent satisfies the specified
+	 * criteria.
+	 * 
+	 * The criteria compares the data of the agent in the current period with
+	 * constants, eg. {@code money>1000 && employed==1}: the comparisons
+	 * ({@code <, <=, >, >=, ==, !=}) can be combined with {@code &&},
+	 * {@code ||}, {@code !} and parentheses. A comparison with a missing data
+	 * (eg. not recorded) is false. The criteria is compiled once, at its first
+	 * use, and then shared by all the agents of this sector.
+	 * 
+	 * @param agent
+	 *            the agent.
+	 * @param criteria
+	 *            the criteria.
+	 * @return {@code true} if the agent satisfies the criteria.
+	 */
+	public boolean satisfy(final Agent agent, final String criteria) {
+		return this.getCriteria(criteria).test(agent, this.getPeriod());
+	}
+
+	/**
+	 * Schedules the entry of new agents in this sector.
+	 * 
+	 * The new agents are created at the next opening of the sector, with the
+	 * IDs released by the agents that exited, if any, or with new IDs. They
+	 * act from that period.
+	 * 
+	 * @param n
+	 *            the number of new agents.
+	 */
+	public synchronized void enter(final int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Bad number of agents: " + n);
+		}
+		this.entering += n;
+	}
+
+	/**
+	 * Schedules the exit of the specified agent.
+	 * 
+	 * The agent is removed from this sector at the next opening (it can be
+	 * called by the agent itself, in any phase): its data of the current
+	 * period are still aggregated. Its ID is then recycled by the next
+	 * entry. An agent that is not in this sector at the opening is ignored.
+	 * The agent must have settled its relations with the other agents
+	 * (employees, accounts...) before the opening.
+	 * 
+	 * @param agent
+	 *            the agent that exits.
+	 */
+	public synchronized void exit(final IdentifiedAgent agent) {
+		this.exiting.add(agent);
 	}
 
 	@Override
@@ -257,15 +971,39 @@ public class BasicSector extends JamelObject implements Sector {
 
 	@Override
 	public Phase getPhase(final String phaseName, final boolean shuffle) {
+		return this.getPhase(phaseName, shuffle, false);
+	}
+
+	/**
+	 * Returns the specified phase.
+	 * 
+	 * When the phase is parallel, the agents are split into chunks that are
+	 * executed concurrently by the common fork/join pool. Each agent then draws
+	 * from its own stream of random numbers, so that the results remain
+	 * reproducible for a given random seed whatever the number of threads.
+	 * Only phases in which the agents do not interact with each other should
+	 * be parallel.
+	 * 
+	 * @param phaseName
+	 *            the name of the phase.
+	 * @param shuffle
+	 *            {@code true} if the agents must be shuffled before acting.
+	 * @param parallel
+	 *            {@code true} if the agents can act concurrently.
+	 * @return the specified phase.
+	 */
+	public Phase getPhase(final String phaseName, final boolean shuffle, final boolean parallel) {
 
 		if (phaseName == null) {
 			throw new RuntimeException("Phase name is null");
 		}
 		final Consumer<? super Agent> action = getAction(phaseName, agentClass);
+		final Random phaseRandom = ((BasicSimulation) this.getSimulation())
+				.getRandomStream("phase/" + this.name + "." + phaseName);
 
-		final Phase result = new Phase() {
+		final PhaseProfiler profiler = new PhaseProfiler(this.name, phaseName, this.getSimulation());
 
-			private long runtime = 0;
+		final Phase result = new Phase() {
 
 			@Override
 			public String getName() {
@@ -274,7 +1012,7 @@ public class BasicSector extends JamelObject implements Sector {
 
 			@Override
 			public long getRuntime() {
-				return this.runtime;
+				return profiler.getRuntime();
 			}
 
 			@Override
@@ -285,21 +1023,24 @@ public class BasicSector extends JamelObject implements Sector {
 			@Override
 			public void run() {
 
-				final long start = System.currentTimeMillis();
+				profiler.start();
 
 				if (shuffle) {
-					Collections.shuffle(BasicSector.this.agents, BasicSector.this.getRandom());
+					Collections.shuffle(BasicSector.this.agents, phaseRandom);
+					BasicSector.this.updatePositions();
 				}
 
 				// ***
 				// Jamel.println(getPeriod(),BasicSector.this.name,this.getName(),agents.size());
 				// ***
 
-				BasicSector.this.agents.forEach(action);
-
-				final long end = System.currentTimeMillis();
+				if (parallel) {
+					BasicSector.this.forEachParallel(profiler.instrument(action), profiler);
+				} else {
+					BasicSector.this.forEachSequential(profiler.instrument(action));
+				}
 
-				runtime += end - start;
+				profiler.stop(BasicSector.this.agents.size(), 0);
 
 			}
 
@@ -310,6 +1051,7 @@ public class BasicSector extends JamelObject implements Sector {
 			throw new RuntimeException(
 					"The sector " + name + " alreday contains a phase with the name '" + phaseName + "'");
 		}
+		this.profilers.put(phaseName, profiler);
 
 		return result;
 
@@ -323,9 +1065,15 @@ public class BasicSector extends JamelObject implements Sector {
 
 	@Override
 	public void open() {
+		if (this.isPopulationChanging()) {
+			this.updatePopulation();
+		}
 		for (int i = 0; i < this.agents.size(); i++) {
 			this.agents.get(i).open();
 		}
+		if (this.selectionWeight != -1) {
+			this.updateWeights();
+		}
 	}
 
 	@Override
@@ -337,77 +1085,217 @@ public class BasicSector extends JamelObject implements Sector {
 	@Override
 	public Agent[] select(int n, Agent special) {
 		final Agent[] result = (Agent[]) Array.newInstance(this.agentClass, n);
+		final int[] indices = new int[Math.min(n + 1, this.agents.size())];
+		final int count = this.sample(indices.length, indices);
 		int i = 0;
-		while (true) {
-			// TODO vérifier que la collection est assez grande pour qu'il y ait
-			// une sortie ou prévoir un coupe-circuit.
-			Agent newAgent = this.agents.get(this.getRandom().nextInt(this.agents.size()));
-			if (this == newAgent) {
-				newAgent = null;
-			} else {
-				for (int j = 0; j < i - 1; j++) {
-					// Si l'agent est déjà dans la sélection, on l'efface.
-					if (result[j] == newAgent) {
-						newAgent = null;
-						break;
-					}
-				}
-			}
-			if (newAgent != null) {
-				result[i] = newAgent;
+		for (int j = 0; j < count && i < n; j++) {
+			final Agent agent = this.agents.get(indices[j]);
+			if (agent != special) {
+				result[i] = agent;
 				i++;
-				if (i == result.length) {
-					break;
-				}
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Returns a read-only view of all the agents of this sector (no copy).
+	 */
 	@Override
 	public List<? extends Agent> selectAll() {
-		return new LinkedList<>(this.agents);
-		// return this.agents;
+		return this.view;
 	}
 
+	/**
+	 * Returns an array of agents selected at random, without replacement.
+	 * 
+	 * If {@code n} exceeds the number of agents, all the agents are selected
+	 * and the end of the array is filled with {@code null}.
+	 */
 	@Override
 	public Agent[] selectArray(final int n) {
-		// TODO revoir cette méthode, s'inspirer de la suivante + coupe circuit.
 		final Agent[] result = (Agent[]) Array.newInstance(this.agentClass, n);
-		for (int i = 0; i < n; i++) {
-			result[i] = this.agents.get(this.getRandom().nextInt(this.agents.size()));
-			for (int j = 0; j < i; j++) {
-				// Si l'agent est déjà dans la sélection, on l'efface.
-				if (result[j] == result[i]) {
-					result[i] = null;
-					i--;
-					break;
-				}
-			}
+		final int[] indices = new int[Math.min(n, this.agents.size())];
+		final int count = this.sample(indices.length, indices);
+		for (int i = 0; i < count; i++) {
+			result[i] = this.agents.get(indices[i]);
 		}
 		return result;
 	}
 
+	/**
+	 * Returns a list of agents selected at random, without replacement.
+	 * 
+	 * If {@code n} exceeds the number of agents, all the agents are selected.
+	 */
 	@Override
 	public List<? extends Agent> selectList(int n) {
-		// TODO verifier cette méthode :
-		// 1/ what if n>agents.size() ?
-		// 2/ performance
-		if (n > this.agents.size()) {
-			throw new RuntimeException("n>this.agents.size()");
+		final int[] indices = new int[Math.min(n, this.agents.size())];
+		final int count = this.sample(indices.length, indices);
+		final List<Agent> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(this.agents.get(indices[i]));
 		}
-		final List<Agent> result = new LinkedList<>();
-		for (int i = 0; i < n; i++) {
-			Agent agent = this.agents.get(this.getRandom().nextInt(this.agents.size()));
-			if (result.contains(agent)) {
-				i--;
-			} else {
-				result.add(agent);
+		return result;
+	}
+
+	/**
+	 * Returns a read-only view of the agents of this sector, typed.
+	 * 
+	 * The view costs no allocation and no copy: it reads the agents of this
+	 * sector, in their current order.
+	 * 
+	 * @param <T>
+	 *            the type of the agents (or of one of their roles).
+	 * @param type
+	 *            the type of the agents.
+	 * @return a view of the agents of this sector.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> AgentView<T> getView(final Class<T> type) {
+		if (!type.isAssignableFrom(this.agentClass)) {
+			throw new ClassCastException(
+					"Sector '" + this.name + "': " + this.agentClass.getName() + " is not a " + type.getName());
+		}
+		return (AgentView<T>) this.view;
+	}
+
+	/**
+	 * Returns an agent selected at random, with a probability proportional to
+	 * the data set by the attribute {@code selectionWeight} of the sector, in
+	 * the previous period.
+	 * 
+	 * A share of the draws (the attribute {@code selectionMixing}) is uniform,
+	 * so that the agents with a zero weight can still be selected. The
+	 * selection is uniform if the sector has no {@code selectionWeight}, or if
+	 * all the weights are zero.
+	 * 
+	 * @return an agent selected at random.
+	 */
+	public Agent selectWeighted() {
+		final Agent result;
+		if (this.weighted) {
+			result = this.weightedAgents[this.aliasTable.draw(this.getRandom())];
+		} else {
+			result = this.select();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a list of agents selected at random, with a probability
+	 * proportional to the data set by the attribute {@code selectionWeight}
+	 * of the sector.
+	 * 
+	 * The weighted draws are made with replacement: the list can contain
+	 * duplicates. Without weights, this is {@link #selectList(int)}.
+	 * 
+	 * @param n
+	 *            the number of draws.
+	 * @return a list of agents selected at random.
+	 */
+	public List<? extends Agent> selectWeighted(final int n) {
+		final List<? extends Agent> result;
+		if (this.weighted) {
+			final Random random = this.getRandom();
+			final List<Agent> list = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				list.add(this.weightedAgents[this.aliasTable.draw(random)]);
 			}
+			result = list;
+		} else {
+			result = this.selectList(n);
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the agent at the specified index.
+	 * 
+	 * The indices are those returned by {@link #sample(int, int[])}, valid
+	 * until the next change of the order of the agents (the shuffle at the
+	 * beginning of a phase).
+	 * 
+	 * @param index
+	 *            the index of the agent.
+	 * @return the agent at the specified index.
+	 */
+	public Agent getAgent(final int index) {
+		return this.agents.get(index);
+	}
+
+	/**
+	 * Draws distinct agents at random, without replacement, and puts their
+	 * indices in the specified buffer.
+	 * 
+	 * Robert Floyd's algorithm: the cost is O(k), whatever the number of
+	 * agents, and the buffer can be reused from one call to the next. The
+	 * indices are in random order. If {@code k} exceeds the number of agents,
+	 * all the agents are drawn.
+	 * 
+	 * @param k
+	 *            the number of agents to draw.
+	 * @param indices
+	 *            the buffer of the indices of the agents drawn, of length at
+	 *            least {@code min(k, size())}.
+	 * @return the number of agents drawn, {@code min(k, size())}.
+	 */
+	public int sample(final int k, final int[] indices) {
+		final int size = this.agents.size();
+		final int count = Math.min(k, size);
+		if (count <= 0) {
+			return 0;
+		}
+		if (indices.length < count) {
+			throw new IllegalArgumentException("Buffer too small: " + indices.length + " < " + count);
+		}
+		final Random random = this.getRandom();
+		final SampleMarks sampleMarks = this.sampleMarks.get();
+		if (sampleMarks.marks.length < size) {
+			sampleMarks.marks = new int[size];
+			sampleMarks.stamp = 0;
+		}
+		sampleMarks.stamp++;
+		if (sampleMarks.stamp == 0) {
+			Arrays.fill(sampleMarks.marks, 0);
+			sampleMarks.stamp = 1;
+		}
+		final int[] marks = sampleMarks.marks;
+		final int stamp = sampleMarks.stamp;
+		int n = 0;
+		for (int j = size - count; j < size; j++) {
+			int index = random.nextInt(j + 1);
+			if (marks[index] == stamp) {
+				index = j;
+			}
+			marks[index] = stamp;
+			indices[n] = index;
+			n++;
+		}
+		// The order of Floyd's algorithm is not random.
+		for (int i = count - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int index = indices[i];
+			indices[i] = indices[j];
+			indices[j] = index;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns {@code true} if the data of the agents of this sector are
+	 * recorded in the current period.
+	 * 
+	 * The data are not recorded during the warm-up of the simulation if the
+	 * attribute {@code recordWarmup} of the sector is {@code false}: the
+	 * decisions of its agents must not depend on their past data.
+	 * 
+	 * @return {@code true} if the data of the agents are recorded.
+	 */
+	public boolean isRecording() {
+		return this.recordWarmup || !((BasicSimulation) this.getSimulation()).isWarmingUp();
+	}
+
 	/**
 	 * Returns the number of agents in this sector.
 	 * 
@@ -418,15 +1306,15 @@ public class BasicSector extends JamelObject implements Sector {
 	}
 
 	/**
-	 * Returns the specified agent.
+	 * Returns the specified agent, in O(1).
 	 * @param agentID the ID number of the specified agent.
+	 * @return the specified agent, or {@code null} if no agent of this sector has this ID.
 	 */
 	public Agent select(int agentID) {
-		final Agent agent = this.agents.get(agentID);
-		if (agent.getID()!=agentID) {
-			throw new RuntimeException("Inconsistency");
+		if (agentID < 0 || agentID >= this.positions.length || this.positions[agentID] == -1) {
+			return null;
 		}
-		return agent;
+		return this.agents.get(this.positions[agentID]);
 	}
 
 }
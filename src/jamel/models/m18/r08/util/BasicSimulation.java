@@ -5,6 +5,7 @@ import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -12,7 +13,17 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.swing.SwingUtilities;
 import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
@@ -23,9 +34,12 @@ import jamel.data.Export;
 import jamel.data.Expression;
 import jamel.data.ExpressionFactory;
 import jamel.gui.Gui;
+import jamel.models.m18.r08.data.BasicAgentDataset;
 import jamel.util.BasicTimer;
 import jamel.util.Parameters;
+import jamel.util.PeriodListener;
 import jamel.util.Phase;
+import jamel.util.RandomStreams;
 import jamel.util.Sector;
 import jamel.util.Simulation;
 
@@ -178,13 +192,52 @@ public class BasicSimulation implements Simulation {
 		return sector;
 	}
 
+	/**
+	 * The executor that runs the bookkeeping of the closed periods, in
+	 * pipelined mode ({@code null} otherwise).
+	 */
+	final private ExecutorService bookkeeper;
+
+	/**
+	 * The thread of the bookkeeper.
+	 */
+	private volatile Thread bookkeeperThread = null;
+
+	/**
+	 * The bookkeeping of the previous period, still running, or {@code null}.
+	 */
+	private Future<?> bookkeeping = null;
+
+	/**
+	 * The breakpoints, evaluated at the end of each period.
+	 */
+	final private List<Breakpoint> breakpoints = new LinkedList<>();
+
+	/**
+	 * The file of the checkpoint to be written at the end of the current
+	 * period, or {@code null}.
+	 */
+	private volatile File checkpoint = null;
+
 	/**
 	 * The date of creation of this simulation.
 	 */
 	private Date date = new Date();
 
+	/**
+	 * The last period to be simulated, or {@code null} if the simulation runs
+	 * until it is closed.
+	 */
+	final private Integer end;
+
+	/**
+	 * The thread that evaluates a stale public data for the previous period,
+	 * or {@code null} (see {@link #getPublicData(String)}).
+	 */
+	private volatile Thread evaluatingThread = null;
+
 	/** The events. */
-	private final Map<Integer, Parameters> events = new HashMap<>();
+	private final EventScheduler events = new EventScheduler();
 
 	/**
 	 * The list of the exports.
@@ -206,16 +259,47 @@ public class BasicSimulation implements Simulation {
 	 */
 	private Gui gui;
 
+	/**
+	 * The management bean of the simulation, or {@code null}.
+	 */
+	final private SimulationMonitor monitor;
+
 	/**
 	 * A flag that indicates whether the simulation is paused or not.
 	 */
-	private boolean pause = true;
+	private volatile boolean pause = true;
+
+	/**
+	 * The lock of the pause.
+	 */
+	final private Lock pauseLock = new ReentrantLock();
+
+	/**
+	 * The duration of the last period, in nanoseconds.
+	 */
+	private volatile long periodTime = 0;
+
+	/**
+	 * The listeners notified at the end of each period.
+	 */
+	final private List<PeriodListener> periodListeners = new LinkedList<>();
 
 	/**
 	 * The list of the phases of the period.
 	 */
 	final private List<Phase> phases = new LinkedList<>();
 
+	/**
+	 * The time spent in each phase during the last period, in nanoseconds.
+	 */
+	private long[] phaseTimes;
+
+	/**
+	 * The period seen by the bookkeeper and by the gui, in pipelined mode
+	 * ({@code null} otherwise).
+	 */
+	private volatile Integer publishedPeriod = null;
+
 	/**
 	 * A collection of expressions to copute the data the agents can access
 	 * (e.g. the inflation rate).
@@ -228,11 +312,32 @@ public class BasicSimulation implements Simulation {
 	 */
 	private final Map<String, Double> publicValues = new HashMap<>();
 
+	/**
+	 * The keys of the public data read by the agents (or by any other client
+	 * of {@link #getPublicData(String)}).
+	 */
+	private final Set<String> readPublicData = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The random of the agents acting in a parallel phase, by thread.
+	 */
+	final private ThreadLocal<Random> localRandom = new ThreadLocal<>();
+
 	/**
 	 * The random.
 	 */
 	final private Random random;
 
+	/**
+	 * Signaled when the simulation is resumed.
+	 */
+	final private Condition resumed = this.pauseLock.newCondition();
+
+	/**
+	 * The independent streams of random numbers, by name.
+	 */
+	final private RandomStreams randomStreams;
+
 	/**
 	 * The number of periods between two refreshing of the gui.
 	 */
@@ -253,6 +358,12 @@ public class BasicSimulation implements Simulation {
 	 */
 	final private Map<String, Sector> sectors = new LinkedHashMap<>();
 
+	/**
+	 * The keys of the public data not updated at the end of the previous
+	 * period, because nobody read them during the warm-up.
+	 */
+	private final Set<String> stalePublicData = new HashSet<>();
+
 	/**
 	 * Provides access to the simulation duration.
 	 */
@@ -323,7 +434,7 @@ public class BasicSimulation implements Simulation {
 
 		@Override
 		public Double getValue() {
-			return (double) timer.getPeriod();
+			return (double) getPeriod();
 		}
 
 		@Override
@@ -363,11 +474,23 @@ public class BasicSimulation implements Simulation {
 	 */
 	private Long start = null;
 
+	/**
+	 * The number of periods to be run before the simulation is paused again,
+	 * or 0.
+	 */
+	private int steps = 0;
+
 	/**
 	 * The timer.
 	 */
 	final private BasicTimer timer;
 
+	/**
+	 * The first period in which the data are fully recorded again, after the
+	 * warm-up (0 if no warm-up).
+	 */
+	final private int warmupEnd;
+
 	/**
 	 * Creates an new simulation.
 	 * 
@@ -380,11 +503,58 @@ public class BasicSimulation implements Simulation {
 
 		this.scenario = scenario;
 		this.file = file;
-		this.timer = new BasicTimer(0);
 
-		// Inits the random.
+		// The optional checkpoint from which the simulation is restored.
+
+		final Checkpoint checkpoint;
+		if (this.scenario.hasAttribute("restore")) {
+			checkpoint = new Checkpoint(this.getRelativeFile(this.scenario.getAttribute("restore")), this);
+		} else {
+			checkpoint = null;
+		}
+
+		// Inits the timer and the random.
 
-		this.random = new Random(this.scenario.getIntAttribute("randomSeed"));
+		if (checkpoint == null) {
+			this.timer = new BasicTimer(0);
+			this.random = new Random(this.scenario.getIntAttribute("randomSeed"));
+			this.randomStreams = new RandomStreams(this.scenario.getIntAttribute("randomSeed"));
+		} else {
+			this.timer = new BasicTimer(checkpoint.getPeriod());
+			this.random = checkpoint.getRandom();
+			this.randomStreams = checkpoint.getRandomStreams();
+			this.publicValues.putAll(checkpoint.getPublicValues());
+		}
+
+		// The optional end of the simulation.
+
+		if (this.scenario.hasAttribute("end")) {
+			this.end = this.scenario.getIntAttribute("end");
+		} else {
+			this.end = null;
+		}
+
+		// The optional warm-up: the recording resumes early enough to refill
+		// the history of the agents before the period of interest.
+
+		if (this.scenario.hasAttribute("warmup")) {
+			this.warmupEnd = this.scenario.getIntAttribute("warmup") - BasicAgentDataset.getMaxSize();
+		} else {
+			this.warmupEnd = 0;
+		}
+
+		// The optional pipelined mode.
+
+		if (Boolean.parseBoolean(this.scenario.getAttribute("pipelined"))) {
+			this.bookkeeper = Executors.newSingleThreadExecutor((runnable) -> {
+				final Thread thread = new Thread(runnable, "jamel-bookkeeping");
+				thread.setDaemon(true);
+				this.bookkeeperThread = thread;
+				return thread;
+			});
+		} else {
+			this.bookkeeper = null;
+		}
 
 		// Looks for the sectors.
 
@@ -400,12 +570,20 @@ public class BasicSimulation implements Simulation {
 
 		// Populate the sectors.
 
-		{
+		if (checkpoint == null) {
 			for (Sector sector : sectors.values()) {
 				if (sector instanceof BasicSector) {
 					((BasicSector) sector).populate();
 				}
 			}
+			// Cross-sector wiring, once all the agents exist.
+			for (Sector sector : sectors.values()) {
+				if (sector instanceof BasicSector) {
+					((BasicSector) sector).connect();
+				}
+			}
+		} else {
+			checkpoint.restoreAgents(this.sectors);
 		}
 
 		// Looks for the phases.
@@ -415,13 +593,22 @@ public class BasicSimulation implements Simulation {
 			for (final Parameters params : phasesTag.getAll("phase")) {
 				final String phaseName = params.getAttribute("name");
 				final boolean shuffle = Boolean.parseBoolean(params.getAttribute("shuffle"));
+				final boolean parallel = Boolean.parseBoolean(params.getAttribute("parallel"));
 				final String[] sectorNames = params.splitTextContent(",");
 				for (String sectorName : sectorNames) {
 					final Sector sector = this.sectors.get(sectorName);
 					if (sector == null) {
 						throw new RuntimeException("Sector not found: \'" + sectorName + "\'");
 					}
-					final Phase phase = sector.getPhase(phaseName, shuffle);
+					final Phase phase;
+					if (!parallel) {
+						phase = sector.getPhase(phaseName, shuffle);
+					} else if (sector instanceof BasicSector) {
+						phase = ((BasicSector) sector).getPhase(phaseName, shuffle, true);
+					} else {
+						throw new RuntimeException(
+								"Sector: " + sectorName + ", parallel phases not supported: \'" + phaseName + "\'");
+					}
 					if (phase == null) {
 						throw new RuntimeException(
 								"Sector: " + sectorName + ", unable to create the phase: \'" + phaseName + "\'");
@@ -429,6 +616,7 @@ public class BasicSimulation implements Simulation {
 					this.phases.add(phase);
 				}
 			}
+			this.phaseTimes = new long[this.phases.size()];
 		}
 
 		// Looks for the exports.
@@ -448,11 +636,24 @@ public class BasicSimulation implements Simulation {
 			final Parameters eventsTag = this.scenario.get("events");
 			if (eventsTag != null) {
 				for (Parameters event : eventsTag.getAll("when")) {
-					final int period = event.getIntAttribute("t");
-					if (this.events.containsKey(period)) {
-						throw new RuntimeException("Events already defined for the period: " + period);
+					final List<Runnable> actions = new LinkedList<>();
+					for (Parameters action : event.getAll()) {
+						actions.add(this.compileEvent(action));
+					}
+					if (event.hasAttribute("condition")) {
+						final int from = event.hasAttribute("t") ? event.getIntAttribute("t") : 0;
+						this.events.addConditional(from,
+								this.expressionFactory.getExpression(event.getAttribute("condition")), actions);
+					} else if (event.hasAttribute("every")) {
+						final int every = event.getIntAttribute("every");
+						if (every <= 0) {
+							throw new RuntimeException("when: bad attribute: every: " + every);
+						}
+						final int period = event.hasAttribute("t") ? event.getIntAttribute("t") : every;
+						this.events.addTimed(period, every, actions);
+					} else {
+						this.events.addTimed(event.getIntAttribute("t"), 0, actions);
 					}
-					this.events.put(period, event);
 				}
 			}
 		}
@@ -460,8 +661,10 @@ public class BasicSimulation implements Simulation {
 		{
 			final Parameters guiP = this.scenario.get("gui");
 			if (guiP == null) {
+				// Without gui, nobody could resume the simulation.
 				this.gui = null;
 				this.refresh = null;
+				this.pause = false;
 			} else {
 				this.gui = getNewGui(guiP, this);
 				if (!guiP.hasAttribute("refresh")) {
@@ -477,27 +680,188 @@ public class BasicSimulation implements Simulation {
 				final String name = params.getAttribute("name");
 				final String value = params.getText();
 				this.publicData.put(name, this.expressionFactory.getExpression(value));
+				if (checkpoint != null && !this.publicValues.containsKey(name)) {
+					// Not written in the checkpoint, because stale.
+					this.publicValues.put(name, null);
+					this.stalePublicData.add(name);
+				}
 			}
 		}
 
+		// Looks for the breakpoints.
+
+		{
+			final Parameters breakpointsTag = this.scenario.get("breakpoints");
+			if (breakpointsTag != null) {
+				for (final Parameters params : breakpointsTag.getAll()) {
+					final Breakpoint.Action action;
+					try {
+						action = Breakpoint.Action.valueOf(params.getName().toUpperCase());
+					} catch (IllegalArgumentException e) {
+						throw new RuntimeException("Unknown breakpoint: \'" + params.getName() + "\'", e);
+					}
+					if (!params.hasAttribute("when")) {
+						throw new RuntimeException(params.getName() + ": missing attribute: when");
+					}
+					final Expression condition = this.expressionFactory.getExpression(params.getAttribute("when"));
+					final File breakpointFile = params.hasAttribute("file")
+							? this.getRelativeFile(params.getAttribute("file")) : null;
+					this.breakpoints.add(new Breakpoint(action, condition, breakpointFile));
+				}
+			}
+		}
+
+		// The optional management bean.
+
+		if (Boolean.parseBoolean(this.scenario.getAttribute("jmx"))) {
+			this.monitor = new SimulationMonitor(this);
+			this.monitor.register();
+		} else {
+			this.monitor = null;
+		}
+
 	}
 
 	/**
-	 * Executes the events of the simulation.
+	 * Waits for the completion of the bookkeeping of the previous period.
 	 */
-	private void doEvents() {
-		final Parameters currentEvents = this.events.get(getPeriod());
-		if (currentEvents != null) {
-			for (Parameters event : currentEvents.getAll()) {
-				if (!event.hasAttribute("sector")) {
-					this.event(event);
-				} else {
-					final String sectorName = event.getAttribute("sector");
-					// TODO test if sector exists else throw new exception
-					this.sectors.get(sectorName).doEvent(event);
+	private void awaitBookkeeping() {
+		if (this.bookkeeping != null) {
+			try {
+				this.bookkeeping.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException("Something went wrong while doing the bookkeeping.", e);
+			} finally {
+				this.bookkeeping = null;
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the breakpoints, and executes the actions of those that are
+	 * triggered.
+	 */
+	private void checkBreakpoints() {
+		for (final Breakpoint breakpoint : this.breakpoints) {
+			if (breakpoint.check()) {
+				Jamel.println("breakpoint", this.timer.getPeriod(), breakpoint);
+				switch (breakpoint.getAction()) {
+				case CHECKPOINT:
+					this.checkpoint(breakpoint.getFile());
+					break;
+				case PAUSE:
+					this.requestPause();
+					break;
+				case STOP:
+					this.run = false;
+					break;
+				default:
+					throw new RuntimeException("Unexpected action: " + breakpoint.getAction());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles the specified event into an action.
+	 * 
+	 * @param event
+	 *            the description of the event.
+	 * @return the action of the event.
+	 */
+	private Runnable compileEvent(final Parameters event) {
+		final Runnable result;
+		if (event.hasAttribute("sector")) {
+			final String sectorName = event.getAttribute("sector");
+			final Sector sector = this.sectors.get(sectorName);
+			if (sector == null) {
+				throw new RuntimeException("Sector not found: \'" + sectorName + "\'");
+			}
+			if (sector instanceof BasicSector) {
+				result = ((BasicSector) sector).compileEvent(event);
+			} else {
+				result = () -> sector.doEvent(event);
+			}
+		} else if (event.getName().equals("do")) {
+			final String action = event.getAttribute("action");
+			switch (action) {
+			case "pause":
+				result = this::requestPause;
+				break;
+			case "exportCharts":
+				/* 
+				 * TODO : il me semble qu'il y a un pb ici. 
+				 * Plutôt que de recevoir un évènement de la part de l'interface, 
+				 * la simulation devrait consulter l'interface et recueillir une liste d'événements à effectuer.
+				 */
+				result = () -> {
+					if (this.gui != null) {
+						this.gui.doEvent(event);
+					}
+				};
+				break;
+			case "checkpoint":
+				if (!event.hasAttribute("file")) {
+					throw new RuntimeException("checkpoint: missing attribute: file");
 				}
+				final File checkpointFile = this.getRelativeFile(event.getAttribute("file"));
+				result = () -> this.checkpoint(checkpointFile);
+				break;
+			case "beep":
+				result = () -> {
+					if (!Jamel.isHeadless()) {
+						Toolkit.getDefaultToolkit().beep();
+					}
+				};
+				break;
+			default:
+				throw new RuntimeException("Not yet implemented: \'" + action + "\'");
 			}
+		} else {
+			throw new RuntimeException("Not yet implemented: \'" + event.getName() + "\'");
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the period that has just been run, when the simulation runs a
+	 * given number of periods (see {@link #step(int)}).
+	 */
+	private void countStep() {
+		this.pauseLock.lock();
+		try {
+			if (this.steps > 0) {
+				this.steps--;
+				if (this.steps == 0) {
+					this.pause = true;
+				}
+			}
+		} finally {
+			this.pauseLock.unlock();
+		}
+	}
+
+	/**
+	 * Refreshes the gui and runs the exports, at the end of the period.
+	 * 
+	 * @param refreshGui
+	 *            {@code true} if the gui must be refreshed.
+	 */
+	private void doBookkeeping(final boolean refreshGui) {
+		if (refreshGui) {
+			this.gui.refresh();
 		}
+		for (final Export export : this.exports) {
+			export.run();
+		}
+	}
+
+	/**
+	 * Executes the events of the simulation.
+	 */
+	private void doEvents() {
+		// The events (eg. exportCharts) see the bookkeeping of the period.
+		this.events.fire(getPeriod(), this::awaitBookkeeping);
 	}
 
 	/**
@@ -505,13 +869,17 @@ public class BasicSimulation implements Simulation {
 	 */
 	private void doPause() {
 		if (isPaused()) {
-			this.gui.refresh();
-			while (isPaused()) {
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+			this.awaitBookkeeping();
+			if (this.gui != null) {
+				this.gui.refresh();
+			}
+			this.pauseLock.lock();
+			try {
+				while (this.pause) {
+					this.resumed.awaitUninterruptibly();
 				}
+			} finally {
+				this.pauseLock.unlock();
 			}
 		}
 	}
@@ -525,7 +893,9 @@ public class BasicSimulation implements Simulation {
 			sector.open();
 		}
 
+		int index = 0;
 		for (final Phase phase : this.phases) {
+			final long start = System.nanoTime();
 			try {
 				phase.run();
 			} catch (Exception e) {
@@ -535,8 +905,15 @@ public class BasicSimulation implements Simulation {
 				}
 				throw new RuntimeException(where, e);
 			}
+			this.phaseTimes[index] = System.nanoTime() - start;
+			index++;
 		}
 
+		// The bookkeeping of the previous period reads the data of the agents
+		// and the agents published by the sectors, which are updated when the
+		// sectors are closed.
+		this.awaitBookkeeping();
+
 		for (Sector sector : this.sectors.values()) {
 			sector.close();
 		}
@@ -546,23 +923,131 @@ public class BasicSimulation implements Simulation {
 		// Cela ne peut être fait qu'une fois tous les secteurs fermés,
 		// ie, une fois que toutes les données de la période ont été
 		// reccueillies.
-		for (final Entry<String, Expression> entry : this.publicData.entrySet()) {
-			final String key = entry.getKey();
-			final Double value = entry.getValue().getValue();
-			this.publicValues.put(key, value);
+		// During the warm-up, only the data read by the agents are updated
+		// (and those never computed yet): the others become stale.
+		final boolean warmingUp = this.isWarmingUp();
+		synchronized (this.stalePublicData) {
+			for (final Entry<String, Expression> entry : this.publicData.entrySet()) {
+				final String key = entry.getKey();
+				if (!warmingUp || this.readPublicData.contains(key) || !this.publicValues.containsKey(key)) {
+					final Double value = entry.getValue().getValue();
+					this.publicValues.put(key, value);
+					this.stalePublicData.remove(key);
+				} else {
+					this.stalePublicData.add(key);
+				}
+			}
 		}
 
-		final boolean refereshGui = this.timer.getPeriod() % this.refresh == 0;
-		if (refereshGui) {
-			this.gui.refresh();
+		for (final PeriodListener listener : this.periodListeners) {
+			listener.periodClosed(this);
 		}
 
-		for (final Export export : this.exports) {
-			export.run();
+		// The breakpoints and the conditions of the events are evaluated on
+		// this thread, before the bookkeeping of the period starts.
+		this.checkBreakpoints();
+		this.events.evaluate(this.timer.getPeriod());
+
+		final boolean refreshGui = this.gui != null && this.timer.getPeriod() % this.refresh == 0;
+		// No gui refresh and no exports during the warm-up.
+		if (!warmingUp) {
+			if (this.bookkeeper == null) {
+				this.doBookkeeping(refreshGui);
+			} else {
+				// Pipelined mode: the bookkeeping of this period runs while
+				// the next period is simulated.
+				this.publishedPeriod = this.timer.getPeriod();
+				this.bookkeeping = this.bookkeeper.submit(() -> this.doBookkeeping(refreshGui));
+			}
 		}
+
 		this.doEvents();
+		this.countStep();
 		this.doPause();
 		this.timer.next();
+
+		if (this.checkpoint != null) {
+			final Map<String, Double> values;
+			synchronized (this.stalePublicData) {
+				values = new HashMap<>(this.publicValues);
+				values.keySet().removeAll(this.stalePublicData);
+			}
+			Checkpoint.write(this.checkpoint, this.timer.getPeriod(), this.random, this.randomStreams, values,
+					this.sectors.values());
+			Jamel.println("checkpoint", this.checkpoint.getPath());
+			this.checkpoint = null;
+		}
+	}
+
+	/**
+	 * Records the first read of the specified public data.
+	 * 
+	 * A public data not read yet is not updated during the warm-up: if stale,
+	 * its value is computed again, for the previous period, before this first
+	 * read. The agents read the public data from several threads: the first
+	 * reads are serialized.
+	 * 
+	 * @param key
+	 *            the key of the public data.
+	 * @param exp
+	 *            the expression of the public data.
+	 */
+	private void firstRead(final String key, final Expression exp) {
+		synchronized (this.stalePublicData) {
+			if (this.stalePublicData.remove(key)) {
+				this.evaluatingThread = Thread.currentThread();
+				try {
+					this.publicValues.put(key, exp.getValue());
+				} finally {
+					this.evaluatingThread = null;
+				}
+			}
+			this.readPublicData.add(key);
+		}
+	}
+
+	/**
+	 * Returns the specified file, the path of which is relative to the
+	 * directory of the scenario.
+	 * 
+	 * @param path
+	 *            the path of the file.
+	 * @return the specified file.
+	 */
+	private File getRelativeFile(final String path) {
+		final File result = new File(path);
+		return (result.isAbsolute()) ? result : new File(this.file.getAbsoluteFile().getParentFile(), path);
+	}
+
+	/**
+	 * Pauses the simulation, if it can be resumed (by the gui or through the
+	 * management bean).
+	 */
+	private void requestPause() {
+		// Without gui or management bean, nobody could resume the simulation.
+		if (this.gui != null || this.monitor != null) {
+			this.setPaused(true);
+		}
+	}
+
+	@Override
+	public void addPeriodListener(final PeriodListener listener) {
+		this.periodListeners.add(listener);
+	}
+
+	/**
+	 * Requests a checkpoint of this simulation.
+	 * 
+	 * The checkpoint is written into the specified file at the end of the
+	 * current period (after the events). A simulation restored from this
+	 * checkpoint (with the attribute {@code restore} of the scenario) starts
+	 * at the next period, and continues exactly as this simulation.
+	 * 
+	 * @param file
+	 *            the file of the checkpoint.
+	 */
+	public void checkpoint(final File file) {
+		this.checkpoint = file;
 	}
 
 	@Override
@@ -576,31 +1061,7 @@ public class BasicSimulation implements Simulation {
 
 	@Override
 	public void event(Parameters event) {
-		switch (event.getName()) {
-		case "do":
-			final String action = event.getAttribute("action");
-			switch (action) {
-			case "pause":
-				this.pause = true;
-				break;
-			case "exportCharts":
-				/* 
-				 * TODO : il me semble qu'il y a un pb ici. 
-				 * Plutôt que de recevoir un évènement de la part de l'interface, 
-				 * la simulation devrait consulter l'interface et recueillir une liste d'événements à effectuer.
-				 */
-				this.gui.doEvent(event);
-				break;
-			case "beep":
-				Toolkit.getDefaultToolkit().beep();
-				break;
-			default:
-				throw new RuntimeException("Not yet implemented: \'" + action + "\'");
-			}
-			break;
-		default:
-			throw new RuntimeException("Not yet implemented: \'" + event.getName() + "\'");
-		}
+		this.compileEvent(event).run();
 	}
 
 	@Override
@@ -645,8 +1106,24 @@ public class BasicSimulation implements Simulation {
 		return this.file.getName();
 	}
 
+	/**
+	 * Returns the current period.
+	 * 
+	 * In pipelined mode, the bookkeeper and the gui see the period being
+	 * published, while the agents see the period being simulated. A stale
+	 * public data is evaluated for the previous period (see
+	 * {@link #getPublicData(String)}).
+	 */
 	@Override
 	public int getPeriod() {
+		if (this.evaluatingThread == Thread.currentThread()) {
+			return this.timer.getPeriod() - 1;
+		}
+		final Integer published = this.publishedPeriod;
+		if (published != null && (Thread.currentThread() == this.bookkeeperThread
+				|| (this.gui != null && SwingUtilities.isEventDispatchThread()))) {
+			return published;
+		}
 		return this.timer.getPeriod();
 	}
 
@@ -672,6 +1149,10 @@ public class BasicSimulation implements Simulation {
 			*/
 		}
 
+		if (!this.readPublicData.contains(key)) {
+			this.firstRead(key, exp);
+		}
+
 		/*
 		 * On ne calcule pas la valeur de l'expression, parce qu'on est en cours de période.
 		 * On renvoie la valeur en cache, qui a été calculée à la fin de la prériode précédente.
@@ -683,11 +1164,32 @@ public class BasicSimulation implements Simulation {
 	/**
 	 * Returns the random.
 	 * 
+	 * Within a phase of a sector, returns the random of the agent currently
+	 * acting on this thread (the agents themselves always draw from their own
+	 * stream, see {@link AbstractAgent#getRandom()}).
+	 * 
 	 * @return the random.
 	 */
 	@Override
 	public Random getRandom() {
-		return random;
+		final Random local = this.localRandom.get();
+		return (local != null) ? local : this.random;
+	}
+
+	/**
+	 * Returns the specified stream of random numbers.
+	 * 
+	 * Each stream is independent from the random of the simulation and from
+	 * the other streams, and is derived deterministically from the random seed
+	 * of the scenario. Used by the sectors, the phases and the agents that need
+	 * their own sequence of random numbers.
+	 * 
+	 * @param name
+	 *            the name of the stream.
+	 * @return the specified stream of random numbers.
+	 */
+	public Random getRandomStream(final String name) {
+		return this.randomStreams.getStream(name);
 	}
 
 	@Override
@@ -719,6 +1221,95 @@ public class BasicSimulation implements Simulation {
 		return this.simTotalMemory;
 	}
 
+	/**
+	 * Removes the specified stream of random numbers (see
+	 * {@link RandomStreams#removeStream(String)}).
+	 * 
+	 * @param name
+	 *            the name of the stream.
+	 */
+	void removeRandomStream(final String name) {
+		this.randomStreams.removeStream(name);
+	}
+
+	/**
+	 * Sets the random to be used by the current thread.
+	 * Used by the phases of the sectors, and for the creation of the agents.
+	 * 
+	 * @param random
+	 *            the random of the agent acting on the current thread, or
+	 *            {@code null} to restore the random of the simulation.
+	 */
+	void setLocalRandom(final Random random) {
+		if (random == null) {
+			this.localRandom.remove();
+		} else {
+			this.localRandom.set(random);
+		}
+	}
+
+	/**
+	 * Returns the number of agents of each sector.
+	 * 
+	 * @return the number of agents, by sector name.
+	 */
+	Map<String, Integer> getAgentCounts() {
+		final Map<String, Integer> result = new LinkedHashMap<>();
+		for (final Sector sector : this.sectors.values()) {
+			if (sector instanceof BasicSector) {
+				result.put(sector.getName(), ((BasicSector) sector).size());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the speed of the simulation, measured on the last period.
+	 * 
+	 * @return the number of periods per second.
+	 */
+	double getPeriodsPerSecond() {
+		final long time = this.periodTime;
+		return (time > 0) ? 1e9 / time : 0;
+	}
+
+	/**
+	 * Returns the time spent in each phase during the last period.
+	 * 
+	 * @return the time spent in each phase, in nanoseconds, by
+	 *         {@code <sector>.<phase>}.
+	 */
+	Map<String, Long> getPhaseTimes() {
+		final Map<String, Long> result = new LinkedHashMap<>();
+		int index = 0;
+		for (final Phase phase : this.phases) {
+			result.put(phase.getSector().getName() + "." + phase.getName(), this.phaseTimes[index]);
+			index++;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns {@code true} if the simulation is warming up.
+	 * 
+	 * During the warm-up (set by the attribute {@code warmup} of the
+	 * scenario, the first period of interest), the gui is not refreshed, the
+	 * exports are not run, the public data not read by the agents are not
+	 * updated, and the data of the sectors with {@code recordWarmup="false"}
+	 * are not recorded. The warm-up ends early enough before the period of
+	 * interest to refill the history of the agents.
+	 * 
+	 * @return {@code true} if the simulation is warming up.
+	 */
+	public boolean isWarmingUp() {
+		return this.timer.getPeriod() < this.warmupEnd;
+	}
+
+	@Override
+	public boolean isBatchable() {
+		return true;
+	}
+
 	@Override
 	public boolean isPaused() {
 		return this.pause;
@@ -726,7 +1317,53 @@ public class BasicSimulation implements Simulation {
 
 	@Override
 	public void pause() {
-		this.pause = !this.pause;
+		this.pauseLock.lock();
+		try {
+			this.setPaused(!this.pause);
+		} finally {
+			this.pauseLock.unlock();
+		}
+	}
+
+	/**
+	 * Pauses or resumes the simulation.
+	 * 
+	 * A paused simulation stops at the end of the current period, and is
+	 * resumed immediately.
+	 * 
+	 * @param paused
+	 *            {@code true} to pause the simulation, {@code false} to resume
+	 *            it.
+	 */
+	public void setPaused(final boolean paused) {
+		this.pauseLock.lock();
+		try {
+			this.steps = 0;
+			this.pause = paused;
+			this.resumed.signalAll();
+		} finally {
+			this.pauseLock.unlock();
+		}
+	}
+
+	/**
+	 * Runs the specified number of periods, then pauses the simulation.
+	 * 
+	 * @param periods
+	 *            the number of periods to be run.
+	 */
+	public void step(final int periods) {
+		if (periods <= 0) {
+			throw new IllegalArgumentException("Bad number of periods: " + periods);
+		}
+		this.pauseLock.lock();
+		try {
+			this.steps = periods;
+			this.pause = false;
+			this.resumed.signalAll();
+		} finally {
+			this.pauseLock.unlock();
+		}
 	}
 
 	@Override
@@ -734,11 +1371,26 @@ public class BasicSimulation implements Simulation {
 		this.run = true;
 		this.doPause();
 		this.start = System.currentTimeMillis();
-		while (this.run) {
-			final long before = System.currentTimeMillis();
-			this.doPeriod();
-			final long after = System.currentTimeMillis();
-			this.speed = 1. / (after - before);
+		try {
+			while (this.run) {
+				final long before = System.nanoTime();
+				this.doPeriod();
+				final long after = System.nanoTime();
+				this.periodTime = after - before;
+				this.speed = 1e6 / (after - before);
+				if (this.end != null && this.timer.getPeriod() > this.end) {
+					this.run = false;
+				}
+			}
+			this.awaitBookkeeping();
+		} finally {
+			// Also when a period fails.
+			if (this.bookkeeper != null) {
+				this.bookkeeper.shutdown();
+			}
+			if (this.monitor != null) {
+				this.monitor.unregister();
+			}
 		}
 
 	}
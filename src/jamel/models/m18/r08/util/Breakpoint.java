@@ -0,0 +1,114 @@
+package jamel.models.m18.r08.util;
+
+import java.io.File;
+
+import jamel.data.Expression;
+
+/**
+ * A condition attached to a run, evaluated once per period.
+ *
+ * The condition is an expression of the {@code ExpressionFactory}, compiled
+ * once, eg. {@code val(Sector2,count,t,sum) < 10} or {@code t > 2000}. It
+ * holds when its value is neither null, nor NaN, nor 0. The breakpoint is
+ * triggered when its condition starts to hold (and not again while it still
+ * holds).
+ */
+class Breakpoint {
+
+	/**
+	 * The actions of the breakpoints.
+	 */
+	enum Action {
+
+		/**
+		 * Writes a checkpoint of the simulation.
+		 */
+		CHECKPOINT,
+
+		/**
+		 * Pauses the simulation.
+		 */
+		PAUSE,
+
+		/**
+		 * Stops the simulation.
+		 */
+		STOP;
+
+	}
+
+	/**
+	 * The action.
+	 */
+	final private Action action;
+
+	/**
+	 * The condition.
+	 */
+	final private Expression condition;
+
+	/**
+	 * The file of the checkpoint ({@code null} for other actions).
+	 */
+	final private File file;
+
+	/**
+	 * {@code true} if the condition held at the previous evaluation.
+	 */
+	private boolean holds = false;
+
+	/**
+	 * Creates a new breakpoint.
+	 *
+	 * @param action
+	 *            the action.
+	 * @param condition
+	 *            the condition.
+	 * @param file
+	 *            the file of the checkpoint ({@code null} for other actions).
+	 */
+	Breakpoint(final Action action, final Expression condition, final File file) {
+		if (action == Action.CHECKPOINT && file == null) {
+			throw new IllegalArgumentException("checkpoint: missing file");
+		}
+		this.action = action;
+		this.condition = condition;
+		this.file = file;
+	}
+
+	/**
+	 * Evaluates the condition.
+	 *
+	 * @return {@code true} if the condition starts to hold.
+	 */
+	boolean check() {
+		final Double value = this.condition.getValue();
+		final boolean previous = this.holds;
+		this.holds = value != null && !value.isNaN() && value != 0;
+		return this.holds && !previous;
+	}
+
+	/**
+	 * Returns the action.
+	 *
+	 * @return the action.
+	 */
+	Action getAction() {
+		return this.action;
+	}
+
+	/**
+	 * Returns the file of the checkpoint.
+	 *
+	 * @return the file of the checkpoint ({@code null} for other actions).
+	 */
+	File getFile() {
+		return this.file;
+	}
+
+	@Override
+	public String toString() {
+		return this.action.name().toLowerCase() + " when " + this.condition;
+	}
+
+}
@@ -0,0 +1,368 @@
+package jamel.models.m18.r08.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import jamel.data.DataKeys;
+import jamel.util.Agent;
+import jamel.util.RandomStreams;
+import jamel.util.Sector;
+import jamel.util.Simulation;
+
+/**
+ * A checkpoint: a compressed binary snapshot of the state of a simulation at
+ * the end of a period.
+ *
+ * The checkpoint contains the period, the randoms, the public values and the
+ * agents of each {@code BasicSector} (with everything they own: accounts,
+ * loans, machinery, datasets...). The simulation, the sectors and the data
+ * keys are not written: they are replaced by references, resolved against the
+ * new simulation when the checkpoint is read. The other sectors (markets,
+ * technologies) are rebuilt from the scenario.
+ *
+ * The serialization is recursive. The links that chain the agents to one
+ * another (suppliers, owners...) are written as IDs by the objects that hold
+ * them (see {@link AbstractAgent#writeLinks(ObjectOutputStream, Agent[])}),
+ * and resolved once all the agents are read, so that the depth of the
+ * recursion does not grow with the population.
+ *
+ * A simulation restored from a checkpoint continues exactly as the original
+ * simulation would have continued.
+ */
+class Checkpoint {
+
+	/**
+	 * An input stream that resolves the references to the simulation, to the
+	 * sectors and to the data keys.
+	 */
+	private static class Input extends ObjectInputStream {
+
+		/**
+		 * The tasks to be run once all the agents are read.
+		 */
+		final private List<Runnable> deferred = new ArrayList<>();
+
+		/**
+		 * The simulation being restored.
+		 */
+		final private Simulation simulation;
+
+		/**
+		 * Creates a new input stream.
+		 *
+		 * @param in
+		 *            the underlying input stream.
+		 * @param simulation
+		 *            the simulation being restored.
+		 * @throws IOException
+		 *             if an I/O error occurs.
+		 */
+		private Input(final InputStream in, final Simulation simulation) throws IOException {
+			super(in);
+			this.simulation = simulation;
+			this.enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			final Object result;
+			if (obj instanceof Reference) {
+				final Reference reference = (Reference) obj;
+				switch (reference.kind) {
+				case Reference.KEYS:
+					try {
+						final Method getInstance = Class.forName(reference.name).getDeclaredMethod("getInstance");
+						getInstance.setAccessible(true);
+						result = getInstance.invoke(null);
+					} catch (Exception e) {
+						throw new IOException("Something went wrong while resolving the keys: " + reference.name, e);
+					}
+					break;
+				case Reference.SECTOR:
+					result = this.simulation.getSector(reference.name);
+					break;
+				case Reference.SIMULATION:
+					result = this.simulation;
+					break;
+				default:
+					throw new IOException("Bad reference: " + reference.kind);
+				}
+			} else {
+				result = obj;
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * An output stream that replaces the simulation, the sectors and the data
+	 * keys by references.
+	 */
+	private static class Output extends ObjectOutputStream {
+
+		/**
+		 * Creates a new output stream.
+		 *
+		 * @param out
+		 *            the underlying output stream.
+		 * @throws IOException
+		 *             if an I/O error occurs.
+		 */
+		private Output(final OutputStream out) throws IOException {
+			super(out);
+			this.enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			final Object result;
+			if (obj instanceof Simulation) {
+				result = new Reference(Reference.SIMULATION, null);
+			} else if (obj instanceof Sector) {
+				result = new Reference(Reference.SECTOR, ((Sector) obj).getName());
+			} else if (obj instanceof DataKeys) {
+				result = new Reference(Reference.KEYS, obj.getClass().getName());
+			} else {
+				result = obj;
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * A reference to an object that is not written in the checkpoint.
+	 */
+	private static class Reference implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/** A reference to a set of data keys (a singleton). */
+		private static final int KEYS = 2;
+
+		/** A reference to a sector. */
+		private static final int SECTOR = 1;
+
+		/** A reference to the simulation. */
+		private static final int SIMULATION = 0;
+
+		/**
+		 * The kind of the reference.
+		 */
+		final private int kind;
+
+		/**
+		 * The name of the referenced object.
+		 */
+		final private String name;
+
+		/**
+		 * Creates a new reference.
+		 *
+		 * @param kind
+		 *            the kind of the reference.
+		 * @param name
+		 *            the name of the referenced object.
+		 */
+		private Reference(final int kind, final String name) {
+			this.kind = kind;
+			this.name = name;
+		}
+
+	}
+
+	/**
+	 * The format of the checkpoints.
+	 */
+	private static final String FORMAT = "jamel.m18.r08.checkpoint.1";
+
+	/**
+	 * Defers the specified task until all the agents of the checkpoint are
+	 * read.
+	 * 
+	 * @param in
+	 *            the input stream of the checkpoint.
+	 * @param task
+	 *            the task to be deferred (typically, the resolution of links
+	 *            between agents).
+	 */
+	static void defer(final ObjectInputStream in, final Runnable task) {
+		if (!(in instanceof Input)) {
+			throw new IllegalArgumentException("Not a checkpoint: " + in);
+		}
+		((Input) in).deferred.add(task);
+	}
+
+	/**
+	 * Writes a checkpoint of the specified simulation into the specified file.
+	 *
+	 * Must be called between two periods.
+	 *
+	 * @param file
+	 *            the file.
+	 * @param period
+	 *            the period at which the restored simulation will start.
+	 * @param random
+	 *            the random of the simulation.
+	 * @param randomStreams
+	 *            the streams of random numbers of the simulation.
+	 * @param publicValues
+	 *            the public values of the simulation.
+	 * @param sectors
+	 *            the sectors of the simulation.
+	 */
+	static void write(final File file, final int period, final Random random, final RandomStreams randomStreams,
+			final Map<String, Double> publicValues, final Iterable<Sector> sectors) {
+		try (final ObjectOutputStream out = new Output(new GZIPOutputStream(new FileOutputStream(file)))) {
+			out.writeUTF(FORMAT);
+			out.writeInt(period);
+			out.writeObject(random);
+			out.writeObject(randomStreams);
+			out.writeObject(new HashMap<>(publicValues));
+			for (final Sector sector : sectors) {
+				if (sector instanceof BasicSector) {
+					out.writeUTF(sector.getName());
+					((BasicSector) sector).writeAgents(out);
+				}
+			}
+			out.writeUTF("");
+		} catch (IOException e) {
+			throw new RuntimeException("Something went wrong while writing the checkpoint: " + file.getPath(), e);
+		}
+	}
+
+	/**
+	 * The input stream, positioned at the agents.
+	 */
+	final private Input in;
+
+	/**
+	 * The period at which the restored simulation starts.
+	 */
+	final private int period;
+
+	/**
+	 * The public values.
+	 */
+	final private Map<String, Double> publicValues;
+
+	/**
+	 * The random.
+	 */
+	final private Random random;
+
+	/**
+	 * The streams of random numbers.
+	 */
+	final private RandomStreams randomStreams;
+
+	/**
+	 * Reads the specified checkpoint.
+	 *
+	 * Only the period, the randoms and the public values are read at once. The
+	 * agents are read by {@link #restoreAgents(Map)}, once the sectors of the
+	 * new simulation are created.
+	 *
+	 * @param file
+	 *            the file of the checkpoint.
+	 * @param simulation
+	 *            the simulation to be restored.
+	 */
+	@SuppressWarnings("unchecked")
+	Checkpoint(final File file, final Simulation simulation) {
+		try {
+			this.in = new Input(new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath()))),
+					simulation);
+			final String format = this.in.readUTF();
+			if (!format.equals(FORMAT)) {
+				throw new RuntimeException("Bad format: " + format);
+			}
+			this.period = this.in.readInt();
+			this.random = (Random) this.in.readObject();
+			this.randomStreams = (RandomStreams) this.in.readObject();
+			this.publicValues = (Map<String, Double>) this.in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException("Something went wrong while reading the checkpoint: " + file.getPath(), e);
+		}
+	}
+
+	/**
+	 * Returns the period at which the restored simulation starts.
+	 *
+	 * @return the period.
+	 */
+	int getPeriod() {
+		return this.period;
+	}
+
+	/**
+	 * Returns the public values.
+	 *
+	 * @return the public values.
+	 */
+	Map<String, Double> getPublicValues() {
+		return this.publicValues;
+	}
+
+	/**
+	 * Returns the random.
+	 *
+	 * @return the random.
+	 */
+	Random getRandom() {
+		return this.random;
+	}
+
+	/**
+	 * Returns the streams of random numbers.
+	 *
+	 * @return the streams of random numbers.
+	 */
+	RandomStreams getRandomStreams() {
+		return this.randomStreams;
+	}
+
+	/**
+	 * Reads the agents and puts them into their sectors.
+	 *
+	 * @param sectors
+	 *            the sectors of the new simulation, by name.
+	 */
+	void restoreAgents(final Map<String, Sector> sectors) {
+		try {
+			String name = this.in.readUTF();
+			while (!name.isEmpty()) {
+				final Sector sector = sectors.get(name);
+				if (!(sector instanceof BasicSector)) {
+					throw new RuntimeException("Sector not found: \'" + name + "\'");
+				}
+				((BasicSector) sector).readAgents(this.in);
+				name = this.in.readUTF();
+			}
+			this.in.close();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException("Something went wrong while reading the checkpoint.", e);
+		}
+		for (final Runnable task : this.in.deferred) {
+			task.run();
+		}
+	}
+
+}
@@ -0,0 +1,309 @@
+package jamel.models.m18.r08.util;
+
+import java.util.function.ToIntFunction;
+
+import jamel.util.Agent;
+
+/**
+ * A criteria for the selection of agents, compiled once.
+ *
+ * The criteria compares the data of the agents, as recorded for a given
+ * period, with constants, eg. {@code money>1000 && employed==1}. The
+ * comparisons ({@code <, <=, >, >=, ==, !=}) can be combined with
+ * {@code &&}, {@code ||}, {@code !} and parentheses. A comparison with a
+ * missing data is false. The criteria {@code *} (or an empty criteria)
+ * selects all the agents.
+ */
+abstract class Criteria {
+
+	/**
+	 * A parser of criteria (recursive descent).
+	 */
+	private static class Parser {
+
+		/**
+		 * Returns {@code true} if the specified character can be part of a data
+		 * key.
+		 *
+		 * @param c
+		 *            the character.
+		 * @return {@code true} if the character can be part of a data key.
+		 */
+		private static boolean isKeyPart(final char c) {
+			return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+		}
+
+		/**
+		 * The indexes of the data keys.
+		 */
+		final private ToIntFunction<String> dataIndex;
+
+		/**
+		 * The current position.
+		 */
+		private int position = 0;
+
+		/**
+		 * The source of the criteria.
+		 */
+		final private String source;
+
+		/**
+		 * Creates a new parser.
+		 *
+		 * @param source
+		 *            the source of the criteria.
+		 * @param dataIndex
+		 *            the indexes of the data keys.
+		 */
+		Parser(final String source, final ToIntFunction<String> dataIndex) {
+			this.source = source;
+			this.dataIndex = dataIndex;
+		}
+
+		/**
+		 * Returns a new exception for a syntax error at the current position.
+		 *
+		 * @param message
+		 *            the message.
+		 * @return a new exception.
+		 */
+		private RuntimeException error(final String message) {
+			return new RuntimeException(
+					"Bad criteria: '" + this.source + "': " + message + " at position " + this.position);
+		}
+
+		/**
+		 * Consumes the specified token, if it is the next one.
+		 *
+		 * @param token
+		 *            the token.
+		 * @return {@code true} if the token was consumed.
+		 */
+		private boolean accept(final String token) {
+			this.skipSpaces();
+			if (this.source.startsWith(token, this.position)) {
+				this.position += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Parses a conjunction.
+		 *
+		 * @return the criteria.
+		 */
+		private Criteria parseAnd() {
+			Criteria result = this.parseUnary();
+			while (this.accept("&&")) {
+				final Criteria left = result;
+				final Criteria right = this.parseUnary();
+				result = new Criteria() {
+					@Override
+					boolean test(Agent agent, int t) {
+						return left.test(agent, t) && right.test(agent, t);
+					}
+				};
+			}
+			return result;
+		}
+
+		/**
+		 * Parses a comparison.
+		 *
+		 * @return the criteria.
+		 */
+		private Criteria parseComparison() {
+			this.skipSpaces();
+			final int start = this.position;
+			while (this.position < this.source.length() && isKeyPart(this.source.charAt(this.position))) {
+				this.position++;
+			}
+			if (this.position == start) {
+				throw this.error("data key expected");
+			}
+			final int index = this.dataIndex.applyAsInt(this.source.substring(start, this.position));
+			final int op;
+			if (this.accept("<=")) {
+				op = LE;
+			} else if (this.accept(">=")) {
+				op = GE;
+			} else if (this.accept("==")) {
+				op = EQ;
+			} else if (this.accept("!=")) {
+				op = NE;
+			} else if (this.accept("<")) {
+				op = LT;
+			} else if (this.accept(">")) {
+				op = GT;
+			} else {
+				throw this.error("comparison operator expected");
+			}
+			this.skipSpaces();
+			final int numberStart = this.position;
+			while (this.position < this.source.length()
+					&& "+-.0123456789eE".indexOf(this.source.charAt(this.position)) != -1) {
+				this.position++;
+			}
+			final double value;
+			try {
+				value = Double.parseDouble(this.source.substring(numberStart, this.position));
+			} catch (NumberFormatException e) {
+				this.position = numberStart;
+				throw this.error("number expected");
+			}
+			return new Criteria() {
+				@Override
+				boolean test(Agent agent, int t) {
+					final Double data = agent.getData(index, t);
+					if (data == null) {
+						return false;
+					}
+					switch (op) {
+					case LT:
+						return data < value;
+					case LE:
+						return data <= value;
+					case GT:
+						return data > value;
+					case GE:
+						return data >= value;
+					case EQ:
+						return data == value;
+					default:
+						return data != value;
+					}
+				}
+			};
+		}
+
+		/**
+		 * Parses a disjunction.
+		 *
+		 * @return the criteria.
+		 */
+		private Criteria parseOr() {
+			Criteria result = this.parseAnd();
+			while (this.accept("||")) {
+				final Criteria left = result;
+				final Criteria right = this.parseAnd();
+				result = new Criteria() {
+					@Override
+					boolean test(Agent agent, int t) {
+						return left.test(agent, t) || right.test(agent, t);
+					}
+				};
+			}
+			return result;
+		}
+
+		/**
+		 * Parses a negation, a parenthesized criteria or a comparison.
+		 *
+		 * @return the criteria.
+		 */
+		private Criteria parseUnary() {
+			final Criteria result;
+			if (this.accept("!")) {
+				final Criteria operand = this.parseUnary();
+				result = new Criteria() {
+					@Override
+					boolean test(Agent agent, int t) {
+						return !operand.test(agent, t);
+					}
+				};
+			} else if (this.accept("(")) {
+				result = this.parseOr();
+				if (!this.accept(")")) {
+					throw this.error("')' expected");
+				}
+			} else {
+				result = this.parseComparison();
+			}
+			return result;
+		}
+
+		/**
+		 * Skips the white spaces.
+		 */
+		private void skipSpaces() {
+			while (this.position < this.source.length() && Character.isWhitespace(this.source.charAt(this.position))) {
+				this.position++;
+			}
+		}
+
+		/**
+		 * Parses the whole source.
+		 *
+		 * @return the criteria.
+		 */
+		Criteria parse() {
+			final Criteria result = this.parseOr();
+			this.skipSpaces();
+			if (this.position != this.source.length()) {
+				throw this.error("unexpected character");
+			}
+			return result;
+		}
+
+	}
+
+	/** The operator ==. */
+	private static final int EQ = 4;
+
+	/** The operator >=. */
+	private static final int GE = 3;
+
+	/** The operator >. */
+	private static final int GT = 2;
+
+	/** The operator <=. */
+	private static final int LE = 1;
+
+	/** The operator <. */
+	private static final int LT = 0;
+
+	/** The operator !=. */
+	private static final int NE = 5;
+
+	/**
+	 * The criteria that selects all the agents.
+	 */
+	static final Criteria ALL = new Criteria() {
+		@Override
+		boolean test(Agent agent, int t) {
+			return true;
+		}
+	};
+
+	/**
+	 * Compiles the specified criteria.
+	 *
+	 * @param source
+	 *            the criteria, eg. {@code money>1000 && employed==1}.
+	 * @param dataIndex
+	 *            the indexes of the data keys of the agents (throws an
+	 *            exception for an unknown key).
+	 * @return the compiled criteria.
+	 */
+	static Criteria compile(final String source, final ToIntFunction<String> dataIndex) {
+		final String trimmed = source.trim();
+		if (trimmed.isEmpty() || trimmed.equals("*")) {
+			return ALL;
+		}
+		return new Parser(trimmed, dataIndex).parse();
+	}
+
+	/**
+	 * Returns {@code true} if the specified agent satisfies this criteria.
+	 *
+	 * @param agent
+	 *            the agent.
+	 * @param t
+	 *            the period of the data.
+	 * @return {@code true} if the agent satisfies this criteria.
+	 */
+	abstract boolean test(Agent agent, int t);
+
+}
@@ -39,4 +39,17 @@ public interface Equity {
 	 */
 	boolean isCanceled();
 
+	/**
+	 * Transfers this equity to the specified shareholder.
+	 * 
+	 * If the new owner already holds an equity of the same company, this
+	 * equity is merged into it and canceled.
+	 * 
+	 * @param heir
+	 *            the new owner.
+	 * @return the equity now held by the new owner (this equity, or the one
+	 *         it was merged into).
+	 */
+	Equity transfer(Shareholder heir);
+
 }
@@ -0,0 +1,207 @@
+package jamel.models.m18.r08.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import jamel.data.Expression;
+
+/**
+ * A scheduler for the events of a simulation.
+ *
+ * The events are compiled once, when the scenario is loaded, into actions.
+ * The timed events (once at a given period, or every {@code n} periods) are
+ * ordered by a priority queue on their next period; the conditional events
+ * fire when their condition starts to hold. Several events can fire in the
+ * same period: they are executed in the order of their declaration.
+ */
+class EventScheduler {
+
+	/**
+	 * An event, ie a set of actions with a schedule.
+	 */
+	private static class Event implements Comparable<Event> {
+
+		/**
+		 * The actions of the event.
+		 */
+		final private Runnable[] actions;
+
+		/**
+		 * The condition of the event, or {@code null} for a timed event.
+		 */
+		final private Expression condition;
+
+		/**
+		 * The number of periods between two occurrences, or 0 for an event
+		 * that occurs once.
+		 */
+		final private int every;
+
+		/**
+		 * {@code true} if the condition held at the previous evaluation.
+		 */
+		private boolean holds = false;
+
+		/**
+		 * The rank of the declaration of this event.
+		 */
+		final private int order;
+
+		/**
+		 * The next period of this event (for a conditional event, the first
+		 * period from which the condition is evaluated).
+		 */
+		private int period;
+
+		/**
+		 * {@code true} if the condition of this event has just started to
+		 * hold.
+		 */
+		private boolean triggered = false;
+
+		/**
+		 * Creates a new event.
+		 *
+		 * @param order
+		 *            the rank of the declaration of this event.
+		 * @param period
+		 *            the first period of the event.
+		 * @param every
+		 *            the number of periods between two occurrences, or 0.
+		 * @param condition
+		 *            the condition of the event, or {@code null}.
+		 * @param actions
+		 *            the actions of the event.
+		 */
+		Event(int order, int period, int every, Expression condition, Runnable[] actions) {
+			this.order = order;
+			this.period = period;
+			this.every = every;
+			this.condition = condition;
+			this.actions = actions;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			final int result = Integer.compare(this.period, other.period);
+			return (result != 0) ? result : Integer.compare(this.order, other.order);
+		}
+
+	}
+
+	/**
+	 * The conditional events.
+	 */
+	final private List<Event> conditionalEvents = new ArrayList<>();
+
+	/**
+	 * The due events, reused from one period to the next.
+	 */
+	final private List<Event> dueEvents = new ArrayList<>();
+
+	/**
+	 * The timed events, ordered by their next period.
+	 */
+	final private PriorityQueue<Event> timedEvents = new PriorityQueue<>();
+
+	/**
+	 * Adds a conditional event.
+	 *
+	 * @param from
+	 *            the first period from which the condition is evaluated.
+	 * @param condition
+	 *            the condition.
+	 * @param actions
+	 *            the actions of the event.
+	 */
+	void addConditional(final int from, final Expression condition, final List<Runnable> actions) {
+		this.conditionalEvents.add(new Event(this.size(), from, 0, condition, actions.toArray(new Runnable[0])));
+	}
+
+	/**
+	 * Adds a timed event.
+	 *
+	 * @param period
+	 *            the first period of the event.
+	 * @param every
+	 *            the number of periods between two occurrences, or 0 for an
+	 *            event that occurs once.
+	 * @param actions
+	 *            the actions of the event.
+	 */
+	void addTimed(final int period, final int every, final List<Runnable> actions) {
+		if (every < 0) {
+			throw new IllegalArgumentException("Bad period: " + every);
+		}
+		this.timedEvents.add(new Event(this.size(), period, every, null, actions.toArray(new Runnable[0])));
+	}
+
+	/**
+	 * Evaluates the conditions of the conditional events.
+	 *
+	 * Must be called once per period, before {@link #fire(int, Runnable)}.
+	 *
+	 * @param period
+	 *            the current period.
+	 */
+	void evaluate(final int period) {
+		for (final Event event : this.conditionalEvents) {
+			if (period >= event.period) {
+				final Double value = event.condition.getValue();
+				final boolean previous = event.holds;
+				event.holds = value != null && !value.isNaN() && value != 0;
+				event.triggered = event.holds && !previous;
+			}
+		}
+	}
+
+	/**
+	 * Executes the actions of the events of the specified period.
+	 *
+	 * @param period
+	 *            the current period.
+	 * @param beforeFirst
+	 *            executed once before the first action, if any event fires.
+	 */
+	void fire(final int period, final Runnable beforeFirst) {
+		while (!this.timedEvents.isEmpty() && this.timedEvents.peek().period <= period) {
+			final Event event = this.timedEvents.poll();
+			if (event.period == period) {
+				this.dueEvents.add(event);
+			}
+			if (event.every > 0) {
+				// The events of the periods before the current period (eg.
+				// after a restore) are skipped.
+				event.period += Math.max(1, (period - event.period + event.every - 1) / event.every) * event.every;
+				this.timedEvents.add(event);
+			}
+		}
+		for (final Event event : this.conditionalEvents) {
+			if (event.triggered) {
+				event.triggered = false;
+				this.dueEvents.add(event);
+			}
+		}
+		if (!this.dueEvents.isEmpty()) {
+			this.dueEvents.sort((e1, e2) -> Integer.compare(e1.order, e2.order));
+			beforeFirst.run();
+			for (final Event event : this.dueEvents) {
+				for (final Runnable action : event.actions) {
+					action.run();
+				}
+			}
+			this.dueEvents.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of events.
+	 *
+	 * @return the number of events.
+	 */
+	int size() {
+		return this.timedEvents.size() + this.conditionalEvents.size();
+	}
+
+}
@@ -0,0 +1,20 @@
+package jamel.models.m18.r08.util;
+
+import jamel.util.Agent;
+
+/**
+ * Represents an agent identified by a number, unique in its sector.
+ * 
+ * The sectors of this model look up, recycle and remove their agents by ID:
+ * all their agents must implement this interface.
+ */
+public interface IdentifiedAgent extends Agent {
+
+	/**
+	 * Returns the ID of this agent, unique in its sector.
+	 * 
+	 * @return the ID of this agent.
+	 */
+	int getID();
+
+}
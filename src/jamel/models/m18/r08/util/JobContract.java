@@ -1,11 +1,13 @@
 package jamel.models.m18.r08.util;
 
+import java.io.Serializable;
+
 import jamel.models.m18.r08.roles.Worker;
 
 /**
  * Represents a labor contract.
  */
-public interface JobContract {
+public interface JobContract extends Serializable {
 
 	/**
 	 * Breaks the contract.
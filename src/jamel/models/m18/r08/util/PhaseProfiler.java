@@ -0,0 +1,509 @@
+package jamel.models.m18.r08.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import jamel.data.Expression;
+import jamel.models.m18.r08.jfr.PhaseEvent;
+import jamel.util.JamelObject;
+import jamel.util.Simulation;
+
+/**
+ * A profiler for a phase.
+ *
+ * Measures, for each period, the time spent in the phase (in nanoseconds),
+ * the bytes allocated by the threads that run the phase and, on demand, the
+ * cost of each agent of the phase, summed up in a histogram.
+ *
+ * The measures are accessible through the keys (relative to
+ * {@code <sector>.phase.<name>.}):
+ * <ul>
+ * <li>{@code runtime}: the cumulative time spent in the phase since the start
+ * of the simulation, in milliseconds,</li>
+ * <li>{@code time}: the time spent in the phase during the period, in
+ * nanoseconds,</li>
+ * <li>{@code alloc}: the bytes allocated during the phase in the period
+ * (null if the JVM does not count the allocations),</li>
+ * <li>{@code agents}: the number of agents timed during the period,</li>
+ * <li>{@code cost.mean}, {@code cost.max}: the mean and the max cost of one
+ * agent, in nanoseconds,</li>
+ * <li>{@code cost.p50}, {@code cost.p90}, {@code cost.p99}: the percentiles of
+ * the cost of one agent, in nanoseconds (upper bound of the bin of the
+ * histogram),</li>
+ * <li>{@code cost.hist.<k>}: the number of agents that cost between
+ * {@code 2^k} and {@code 2^(k+1)} nanoseconds.</li>
+ * </ul>
+ *
+ * The agents are timed only once one of the {@code cost} or {@code agents}
+ * keys has been requested, so that an unused histogram costs nothing.
+ *
+ * Each run of the phase is also a {@link PhaseEvent} of the flight recorder.
+ */
+public class PhaseProfiler extends JamelObject {
+
+	/**
+	 * The measures of one period. Immutable.
+	 */
+	private static class Record {
+
+		/**
+		 * The number of agents timed.
+		 */
+		final private long agents;
+
+		/**
+		 * The bytes allocated, or -1.
+		 */
+		final private long alloc;
+
+		/**
+		 * The histogram of the costs of the agents, or {@code null}.
+		 */
+		final private long[] bins;
+
+		/**
+		 * The max cost of one agent.
+		 */
+		final private long max;
+
+		/**
+		 * The period.
+		 */
+		final private int period;
+
+		/**
+		 * The sum of the costs of the agents.
+		 */
+		final private long sum;
+
+		/**
+		 * The time spent in the phase.
+		 */
+		final private long time;
+
+		/**
+		 * Creates a new record.
+		 *
+		 * @param period
+		 *            the period.
+		 * @param time
+		 *            the time spent in the phase.
+		 * @param alloc
+		 *            the bytes allocated, or -1.
+		 * @param agents
+		 *            the number of agents timed.
+		 * @param sum
+		 *            the sum of the costs of the agents.
+		 * @param max
+		 *            the max cost of one agent.
+		 * @param bins
+		 *            the histogram of the costs of the agents, or
+		 *            {@code null}.
+		 */
+		Record(int period, long time, long alloc, long agents, long sum, long max, long[] bins) {
+			this.period = period;
+			this.time = time;
+			this.alloc = alloc;
+			this.agents = agents;
+			this.sum = sum;
+			this.max = max;
+			this.bins = bins;
+		}
+
+		/**
+		 * Returns the specified percentile of the costs of the agents.
+		 *
+		 * @param p
+		 *            the percentile (between 0 and 1).
+		 * @return the upper bound of the bin that contains the percentile, or
+		 *         {@code null}.
+		 */
+		Double percentile(double p) {
+			Double result = null;
+			if (this.bins != null && this.agents > 0) {
+				final long rank = (long) Math.ceil(p * this.agents);
+				long count = 0;
+				for (int k = 0; k < BINS; k++) {
+					count += this.bins[k];
+					if (count >= rank) {
+						result = Math.scalb(1., k + 1);
+						break;
+					}
+				}
+			}
+			return result;
+		}
+
+	}
+
+	/**
+	 * The number of bins of the histograms.
+	 */
+	private static final int BINS = 64;
+
+	/**
+	 * The bean that counts the allocations of the threads, or {@code null}.
+	 */
+	private static final com.sun.management.ThreadMXBean threadBean;
+
+	static {
+		com.sun.management.ThreadMXBean bean = null;
+		try {
+			final ThreadMXBean candidate = ManagementFactory.getThreadMXBean();
+			if (candidate instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean) candidate).isThreadAllocatedMemorySupported()) {
+				bean = (com.sun.management.ThreadMXBean) candidate;
+				bean.setThreadAllocatedMemoryEnabled(true);
+			}
+		} catch (@SuppressWarnings("unused") LinkageError | UnsupportedOperationException | SecurityException e) {
+			bean = null;
+		}
+		threadBean = bean;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread since its
+	 * start.
+	 *
+	 * @return the number of bytes allocated by the current thread, or -1 if
+	 *         the JVM does not count the allocations.
+	 */
+	public static long allocatedBytes() {
+		return (threadBean == null) ? -1 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * The bytes allocated by the other threads during the current run.
+	 */
+	final private LongAdder alloc = new LongAdder();
+
+	/**
+	 * The bytes allocated by the current thread at the start of the current
+	 * run.
+	 */
+	private long allocStart;
+
+	/**
+	 * The histogram of the costs of the agents during the current run.
+	 */
+	final private AtomicLongArray bins = new AtomicLongArray(BINS);
+
+	/**
+	 * The thread that runs the phase.
+	 */
+	private Thread caller;
+
+	/**
+	 * The cumulative time spent in the phase, in nanoseconds.
+	 */
+	private long cumulativeTime = 0;
+
+	/**
+	 * The flight recorder event of the current run.
+	 */
+	private PhaseEvent event;
+
+	/**
+	 * The max cost of one agent during the current run.
+	 */
+	final private LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * The name of the phase.
+	 */
+	final private String phaseName;
+
+	/**
+	 * The prefix of the keys (for the {@code toString} of the expressions).
+	 */
+	final private String prefix;
+
+	/**
+	 * The measures of the period before the last period recorded.
+	 */
+	private volatile Record previous = null;
+
+	/**
+	 * The measures of the last period recorded.
+	 */
+	private volatile Record record = null;
+
+	/**
+	 * {@code true} if the agents must be timed.
+	 */
+	private volatile boolean timeAgents = false;
+
+	/**
+	 * The name of the sector.
+	 */
+	final private String sectorName;
+
+	/**
+	 * The time at the start of the current run.
+	 */
+	private long timeStart;
+
+	/**
+	 * The sum of the costs of the agents during the current run.
+	 */
+	final private LongAdder sum = new LongAdder();
+
+	/**
+	 * Creates a new profiler.
+	 *
+	 * @param sectorName
+	 *            the name of the sector.
+	 * @param phaseName
+	 *            the name of the phase.
+	 * @param simulation
+	 *            the simulation.
+	 */
+	public PhaseProfiler(final String sectorName, final String phaseName, final Simulation simulation) {
+		super(simulation);
+		this.sectorName = sectorName;
+		this.phaseName = phaseName;
+		this.prefix = sectorName + ".phase." + phaseName + ".";
+	}
+
+	/**
+	 * Returns the record of the period seen by the current thread.
+	 *
+	 * @return the record, or {@code null}.
+	 */
+	private Record getRecord() {
+		final int period = getPeriod();
+		Record result = this.record;
+		if (result == null || result.period != period) {
+			result = this.previous;
+			if (result != null && result.period != period) {
+				result = null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the bytes allocated by a thread other than the caller of
+	 * {@link #start()} (eg. a worker of a parallel phase).
+	 *
+	 * @param bytes
+	 *            the bytes allocated, ignored if the current thread is the
+	 *            caller of {@link #start()} (already counted) or if negative.
+	 */
+	public void addAllocation(final long bytes) {
+		if (bytes > 0 && Thread.currentThread() != this.caller) {
+			this.alloc.add(bytes);
+		}
+	}
+
+	/**
+	 * Adds the cost of one agent. Thread-safe.
+	 *
+	 * @param nanos
+	 *            the cost of the agent, in nanoseconds.
+	 */
+	public void addAgentCost(final long nanos) {
+		final long cost = Math.max(0, nanos);
+		this.bins.incrementAndGet((cost == 0) ? 0 : 63 - Long.numberOfLeadingZeros(cost));
+		this.sum.add(cost);
+		this.max.accumulate(cost);
+	}
+
+	/**
+	 * Returns an expression that gives access to the specified measure.
+	 *
+	 * @param keys
+	 *            the key of the measure, split on dots (eg. {@code "cost"},
+	 *            {@code "p90"}).
+	 * @return an expression.
+	 */
+	public Expression getDataAccess(final String[] keys) {
+		final String key = String.join(".", keys);
+		final Expression result;
+		switch (key) {
+		case "runtime":
+			result = () -> (double) getRuntime();
+			break;
+		case "time":
+			result = () -> {
+				final Record r = getRecord();
+				return (r == null) ? null : (double) r.time;
+			};
+			break;
+		case "alloc":
+			result = () -> {
+				final Record r = getRecord();
+				return (r == null || r.alloc < 0) ? null : (double) r.alloc;
+			};
+			break;
+		case "agents":
+			this.timeAgents = true;
+			result = () -> {
+				final Record r = getRecord();
+				return (r == null || r.bins == null) ? null : (double) r.agents;
+			};
+			break;
+		case "cost.mean":
+			this.timeAgents = true;
+			result = () -> {
+				final Record r = getRecord();
+				return (r == null || r.bins == null || r.agents == 0) ? null : (double) r.sum / r.agents;
+			};
+			break;
+		case "cost.max":
+			this.timeAgents = true;
+			result = () -> {
+				final Record r = getRecord();
+				return (r == null || r.bins == null) ? null : (double) r.max;
+			};
+			break;
+		case "cost.p50":
+		case "cost.p90":
+		case "cost.p99":
+			this.timeAgents = true;
+			final double p = Integer.parseInt(keys[1].substring(1)) / 100.;
+			result = () -> {
+				final Record r = getRecord();
+				return (r == null) ? null : r.percentile(p);
+			};
+			break;
+		default:
+			if (keys.length == 3 && keys[0].equals("cost") && keys[1].equals("hist")) {
+				this.timeAgents = true;
+				final int k = Integer.parseInt(keys[2]);
+				if (k < 0 || k >= BINS) {
+					throw new RuntimeException("Bad bin: " + k);
+				}
+				result = () -> {
+					final Record r = getRecord();
+					return (r == null || r.bins == null) ? null : (double) r.bins[k];
+				};
+			} else {
+				throw new RuntimeException("Bad key: '" + this.prefix + key + "'");
+			}
+		}
+		return new Expression() {
+
+			@Override
+			public Double getValue() {
+				return result.getValue();
+			}
+
+			@Override
+			public String toString() {
+				return prefix + key;
+			}
+
+		};
+	}
+
+	/**
+	 * Returns the cumulative time spent in the phase since the start of the
+	 * simulation.
+	 *
+	 * @return the cumulative time spent in the phase, in milliseconds.
+	 */
+	public long getRuntime() {
+		return this.cumulativeTime / 1000000;
+	}
+
+	/**
+	 * Returns the specified action, timed agent by agent if the costs of the
+	 * agents are requested, or the action itself otherwise.
+	 *
+	 * @param <T>
+	 *            the type of the agents.
+	 * @param action
+	 *            the action of the phase.
+	 * @return the action to be performed.
+	 */
+	public <T> Consumer<T> instrument(final Consumer<T> action) {
+		if (!this.timeAgents) {
+			return action;
+		}
+		return (agent) -> {
+			final long start = System.nanoTime();
+			action.accept(agent);
+			addAgentCost(System.nanoTime() - start);
+		};
+	}
+
+	/**
+	 * Starts a run of the phase.
+	 */
+	public void start() {
+		this.caller = Thread.currentThread();
+		this.alloc.reset();
+		this.sum.reset();
+		this.max.reset();
+		for (int k = 0; k < BINS; k++) {
+			this.bins.set(k, 0);
+		}
+		this.allocStart = allocatedBytes();
+		this.event = new PhaseEvent();
+		this.event.begin();
+		this.timeStart = System.nanoTime();
+	}
+
+	/**
+	 * Stops the current run of the phase, and records its measures.
+	 *
+	 * If the phase has already run in the same period, the measures are
+	 * added to those of the previous run.
+	 *
+	 * @param agents
+	 *            the number of agents that acted in the phase.
+	 * @param matches
+	 *            the number of matches (eg. the hires of the labor market),
+	 *            or 0 if the phase does not match agents.
+	 */
+	public void stop(final long agents, final long matches) {
+		final long time = System.nanoTime() - this.timeStart;
+		this.event.end();
+		if (this.event.shouldCommit()) {
+			this.event.period = getPeriod();
+			this.event.sector = this.sectorName;
+			this.event.phase = this.phaseName;
+			this.event.agents = agents;
+			this.event.matches = matches;
+			this.event.commit();
+		}
+		this.event = null;
+		final long allocEnd = allocatedBytes();
+		final long alloc = (allocEnd < 0) ? -1 : allocEnd - this.allocStart + this.alloc.sum();
+		this.cumulativeTime += time;
+
+		long[] bins = null;
+		long timed = 0;
+		if (this.timeAgents) {
+			bins = new long[BINS];
+			for (int k = 0; k < BINS; k++) {
+				bins[k] = this.bins.get(k);
+				timed += bins[k];
+			}
+		}
+		long sum = this.sum.sum();
+		long max = this.max.get();
+
+		final int period = getPeriod();
+		final Record last = this.record;
+		if (last != null && last.period == period) {
+			if (last.bins != null && bins != null) {
+				for (int k = 0; k < BINS; k++) {
+					bins[k] += last.bins[k];
+				}
+			}
+			this.record = new Record(period, last.time + time, (alloc < 0) ? -1 : last.alloc + alloc,
+					last.agents + timed, last.sum + sum, Math.max(last.max, max), bins);
+		} else {
+			this.previous = last;
+			this.record = new Record(period, time, alloc, timed, sum, max, bins);
+		}
+		this.caller = null;
+	}
+
+}
@@ -0,0 +1,79 @@
+package jamel.models.m18.r08.util;
+
+import java.util.Map;
+
+/**
+ * The management interface of a simulation, for the standard JVM tools
+ * (jconsole, VisualVM, JMX clients).
+ */
+public interface SimulationMXBean {
+
+	/**
+	 * Returns the number of agents of each sector.
+	 * 
+	 * @return the number of agents, by sector name.
+	 */
+	Map<String, Integer> getAgentCounts();
+
+	/**
+	 * Returns the size of the heap.
+	 * 
+	 * @return the maximum size of the heap, in bytes, or -1 if undefined.
+	 */
+	long getHeapMax();
+
+	/**
+	 * Returns the size of the heap in use.
+	 * 
+	 * @return the size of the heap in use, in bytes.
+	 */
+	long getHeapUsed();
+
+	/**
+	 * Returns the current period.
+	 * 
+	 * @return the current period.
+	 */
+	int getPeriod();
+
+	/**
+	 * Returns the speed of the simulation, measured on the last period.
+	 * 
+	 * @return the number of periods per second.
+	 */
+	double getPeriodsPerSecond();
+
+	/**
+	 * Returns the time spent in each phase during the last period.
+	 * 
+	 * @return the time spent in each phase, in nanoseconds, by
+	 *         {@code <sector>.<phase>}.
+	 */
+	Map<String, Long> getPhaseTimes();
+
+	/**
+	 * Returns {@code true} if the simulation is paused.
+	 * 
+	 * @return {@code true} if the simulation is paused.
+	 */
+	boolean isPaused();
+
+	/**
+	 * Pauses the simulation, at the end of the current period.
+	 */
+	void pause();
+
+	/**
+	 * Resumes the simulation.
+	 */
+	void resume();
+
+	/**
+	 * Runs the specified number of periods, then pauses the simulation.
+	 * 
+	 * @param periods
+	 *            the number of periods to be run.
+	 */
+	void step(int periods);
+
+}
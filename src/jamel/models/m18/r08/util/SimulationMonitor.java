@@ -0,0 +1,132 @@
+package jamel.models.m18.r08.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The management bean of a simulation, registered in the platform MBean
+ * server under the name
+ * {@code jamel:type=Simulation,name=<scenario>,id=<n>}.
+ */
+class SimulationMonitor implements SimulationMXBean {
+
+	/**
+	 * The counter of the monitors, that makes their names unique (several
+	 * simulations can run in one JVM).
+	 */
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * The name of this bean, or {@code null} if not registered.
+	 */
+	private ObjectName objectName = null;
+
+	/**
+	 * The simulation.
+	 */
+	final private BasicSimulation simulation;
+
+	/**
+	 * Creates a new monitor.
+	 * 
+	 * @param simulation
+	 *            the simulation.
+	 */
+	SimulationMonitor(final BasicSimulation simulation) {
+		this.simulation = simulation;
+	}
+
+	/**
+	 * Returns the usage of the heap.
+	 * 
+	 * @return the usage of the heap.
+	 */
+	private MemoryUsage getHeapUsage() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+	}
+
+	/**
+	 * Registers this bean in the platform MBean server.
+	 */
+	void register() {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			this.objectName = new ObjectName("jamel:type=Simulation,name="
+					+ ObjectName.quote(this.simulation.getName()) + ",id=" + counter.incrementAndGet());
+			server.registerMBean(this, this.objectName);
+		} catch (JMException e) {
+			throw new RuntimeException("Something went wrong while registering the management bean.", e);
+		}
+	}
+
+	/**
+	 * Unregisters this bean from the platform MBean server.
+	 */
+	void unregister() {
+		if (this.objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+			this.objectName = null;
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getAgentCounts() {
+		return this.simulation.getAgentCounts();
+	}
+
+	@Override
+	public long getHeapMax() {
+		return this.getHeapUsage().getMax();
+	}
+
+	@Override
+	public long getHeapUsed() {
+		return this.getHeapUsage().getUsed();
+	}
+
+	@Override
+	public int getPeriod() {
+		return this.simulation.getPeriod();
+	}
+
+	@Override
+	public double getPeriodsPerSecond() {
+		return this.simulation.getPeriodsPerSecond();
+	}
+
+	@Override
+	public Map<String, Long> getPhaseTimes() {
+		return this.simulation.getPhaseTimes();
+	}
+
+	@Override
+	public boolean isPaused() {
+		return this.simulation.isPaused();
+	}
+
+	@Override
+	public void pause() {
+		this.simulation.setPaused(true);
+	}
+
+	@Override
+	public void resume() {
+		this.simulation.setPaused(false);
+	}
+
+	@Override
+	public void step(final int periods) {
+		this.simulation.step(periods);
+	}
+
+}
@@ -1,11 +1,13 @@
 package jamel.models.m18.r08.util;
 
+import java.io.Serializable;
+
 import jamel.models.m18.r08.roles.Supplier;
 
 /**
  * Represents a supply of commodities.
  */
-public interface Supply {
+public interface Supply extends Serializable {
 
 	/**
 	 * Returns the unit price of the goods.
@@ -1,8 +1,11 @@
 package jamel.models.m18.r08.util;
 
 import java.util.Comparator;
+import java.util.List;
 
 import jamel.models.m18.r08.roles.Supplier;
+import jamel.util.Agent;
+import jamel.util.Sector;
 
 /**
  * A convenience class that provides methods for agents from various packages.
@@ -48,4 +51,34 @@ public class Tools {
 	 */
 	final public static SupplierComparator supplierComparator = new SupplierComparator();
 
+	/**
+	 * Returns a supplier selected at random in the specified sector.
+	 * 
+	 * The selection is weighted if the sector has a {@code selectionWeight}
+	 * (see {@link BasicSector#selectWeighted()}), uniform otherwise.
+	 * 
+	 * @param sector
+	 *            the sector of the suppliers.
+	 * @return a supplier selected at random.
+	 */
+	public static Agent selectSupplier(final Sector sector) {
+		return (sector instanceof BasicSector) ? ((BasicSector) sector).selectWeighted() : sector.select();
+	}
+
+	/**
+	 * Returns a list of suppliers selected at random in the specified sector.
+	 * 
+	 * The selection is weighted if the sector has a {@code selectionWeight}
+	 * (and the list can then contain duplicates), uniform otherwise.
+	 * 
+	 * @param sector
+	 *            the sector of the suppliers.
+	 * @param n
+	 *            the number of suppliers to be selected.
+	 * @return a list of suppliers selected at random.
+	 */
+	public static List<? extends Agent> selectSuppliers(final Sector sector, final int n) {
+		return (sector instanceof BasicSector) ? ((BasicSector) sector).selectWeighted(n) : sector.selectList(n);
+	}
+
 }
@@ -2,11 +2,11 @@ package jamel.models.modelJEE;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.TreeMap;
 
 import jamel.util.Agent;
 
@@ -22,7 +22,10 @@ class BasicAgentSet<A extends Agent> {
 	private final ArrayList<A> arrayList = new ArrayList<A>();
 
 	/** The map. */
-	private final Map<String, A> map = new TreeMap<String, A>();
+	private final Map<String, A> map = new HashMap<String, A>();
+
+	/** The positions of the agents in the arrayList. */
+	private final Map<A, Integer> positions = new HashMap<A, Integer>();
 
 	/** The random. */
 	private final Random random;
@@ -43,6 +46,7 @@ class BasicAgentSet<A extends Agent> {
 	void clear() {
 		this.arrayList.clear();
 		this.map.clear();
+		this.positions.clear();
 	}
 
 	/**
@@ -53,7 +57,7 @@ class BasicAgentSet<A extends Agent> {
 	 * @return <code>true</code> if this set contains the specified agent.
 	 */
 	boolean contains(A agent) {
-		return this.map.containsValue(agent);
+		return this.positions.containsKey(agent);
 	}
 
 	/**
@@ -125,6 +129,7 @@ class BasicAgentSet<A extends Agent> {
 	 *            the agent to be added to this AgentSet.
 	 */
 	void put(A agent) {
+		this.positions.put(agent, this.arrayList.size());
 		this.arrayList.add(agent);
 		this.map.put(agent.getName(), agent);
 	}
@@ -142,17 +147,23 @@ class BasicAgentSet<A extends Agent> {
 	}
 
 	/**
-	 * Removes the first occurrence of the specified agent from this set, if it
-	 * is present.
+	 * Removes the specified agent from this set, in O(1).
+	 * The last agent of the list takes the place of the removed one.
 	 * If this set does not contain the element, a RuntimeException is thrown.
 	 * 
 	 * @param agent
 	 *            agent to be removed from this list, if present.
 	 */
 	void remove(A agent) {
-		if (!this.arrayList.remove(agent)) {
+		final Integer position = this.positions.remove(agent);
+		if (position == null) {
 			throw new RuntimeException("Not found.");
 		}
+		final A last = this.arrayList.remove(this.arrayList.size() - 1);
+		if (last != agent) {
+			this.arrayList.set(position, last);
+			this.positions.put(last, position);
+		}
 		if (this.map.remove(agent.getName()) != agent) {
 			throw new RuntimeException("Bad agent or null.");
 		}
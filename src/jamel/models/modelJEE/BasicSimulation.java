@@ -21,6 +21,7 @@ import jamel.data.ExpressionFactory;
 import jamel.gui.Gui;
 import jamel.util.BasicTimer;
 import jamel.util.Parameters;
+import jamel.util.PeriodListener;
 import jamel.util.Phase;
 import jamel.util.Sector;
 import jamel.util.Simulation;
@@ -231,6 +232,9 @@ public class BasicSimulation implements Simulation {
 	/** A flag that indicates if the simulation is paused or not. */
 	private boolean pause;
 
+	/** The listeners notified at the end of each period. */
+	private final List<PeriodListener> periodListeners = new LinkedList<>();
+
 	/** The phases of the circuit. */
 	private final List<Phase> phases;
 
@@ -493,6 +497,10 @@ public class BasicSimulation implements Simulation {
 			}
 		}
 
+		for (final PeriodListener listener : this.periodListeners) {
+			listener.periodClosed(this);
+		}
+
 		this.gui.refresh();
 
 		/*
@@ -504,6 +512,11 @@ public class BasicSimulation implements Simulation {
 
 	}
 
+	@Override
+	public void addPeriodListener(final PeriodListener listener) {
+		this.periodListeners.add(listener);
+	}
+
 	@Override
 	public void displayErrorMessage(String title, String message) {
 		if (this.gui != null) {
@@ -10,7 +10,18 @@ public abstract class JamelObject {
 	/**
 	 * The parent simulation.
 	 */
-	private final Simulation simulation;
+	private Simulation simulation;
+
+	/**
+	 * Creates a JamelObject without parent simulation.
+	 * 
+	 * Called when a serializable subclass is deserialized: the subclass must
+	 * then restore its parent simulation (see
+	 * {@link #setSimulation(Simulation)}).
+	 */
+	protected JamelObject() {
+		this.simulation = null;
+	}
 
 	/**
 	 * Creates a JamelObject.
@@ -64,7 +75,7 @@ public abstract class JamelObject {
 	 * 
 	 * @return the random.
 	 */
-	final public Random getRandom() {
+	public Random getRandom() {
 		return this.simulation.getRandom();
 	}
 
@@ -88,4 +99,17 @@ public abstract class JamelObject {
 		return this.simulation;
 	}
 
+	/**
+	 * Sets the parent simulation of a deserialized object.
+	 * 
+	 * @param simulation
+	 *            the parent simulation.
+	 */
+	final protected void setSimulation(final Simulation simulation) {
+		if (this.simulation != null) {
+			throw new IllegalStateException("The parent simulation is already set.");
+		}
+		this.simulation = simulation;
+	}
+
 }
@@ -1,93 +1,109 @@
 package jamel.util;
 
-import java.io.StringWriter;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Encapsulates a set of parameters.
  * To facilitate the parsing of XML elements.
+ * 
+ * The element is parsed once, when the parameters are created, into an
+ * immutable tree (the attributes, the sub-parameters and the texts). The
+ * parameters are a snapshot of the element: the later modifications of the
+ * DOM are not seen, and the parameters can be read concurrently. The
+ * sub-parameters at any depth are indexed by name on the first lookup.
  */
 public class Parameters {
 
 	/**
-	 * Converts an element into a string.
-	 * 
-	 * @param elem
-	 *            the element to be converted.
-	 * @return a string representation of this element.
+	 * The space characters, cut from the compact text.
 	 */
-	private static String element2string(final Element elem) {
-		final String result;
-		try {
-			final DOMSource domSource = new DOMSource(elem);
-			final StringWriter writer = new StringWriter();
-			final StreamResult sResult = new StreamResult(writer);
-			final TransformerFactory tf = TransformerFactory.newInstance();
-			final Transformer transformer = tf.newTransformer();
-			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-			transformer.transform(domSource, sResult);
-			result = writer.toString();
-		} catch (TransformerException ex) {
-			throw new RuntimeException(ex);
-		}
-		return result;
-	}
+	private static final Pattern spaces = Pattern.compile("(\\p{javaSpaceChar}|\\r|\\n|\\t)");
 
 	/**
-	 * Converts a <code>NodeList</code> into a <code>List</code> of
-	 * <code>Parameters</code>.
+	 * Appends the specified text to the specified builder, with the XML
+	 * special characters escaped.
 	 * 
-	 * @param nodeList
-	 *            the <code>NodeList</code> to be converted
-	 * @return a <code>List</code> of <code>Parameters</code>
-	 */
-	private static List<Parameters> getList(final NodeList nodeList) {
-		final List<Parameters> result = new LinkedList<>();
-		for (int i = 0; i < nodeList.getLength(); i++) {
-			if (nodeList.item(i) instanceof Element) {
-				result.add(new Parameters(nodeList.item(i)));
+	 * @param builder
+	 *            the builder.
+	 * @param text
+	 *            the text to be appended.
+	 * @param attribute
+	 *            {@code true} if the text is the value of an attribute.
+	 */
+	private static void escape(final StringBuilder builder, final String text, final boolean attribute) {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			case '"':
+				builder.append(attribute ? "&quot;" : "\"");
+				break;
+			default:
+				builder.append(c);
 			}
 		}
-		return result;
 	}
 
+	/**
+	 * The attributes, by name.
+	 */
+	final private Map<String, String> attributes;
+
+	/**
+	 * The sub-parameters (the child elements).
+	 */
+	final private List<Parameters> children;
+
+	/**
+	 * The content: the texts ({@code String}) and the sub-parameters, in
+	 * document order.
+	 */
+	final private Object[] content;
+
+	/**
+	 * The sub-parameters at any depth, by name (the special name "*" matches
+	 * all of them), in document order. Built on the first lookup.
+	 */
+	private volatile Map<String, List<Parameters>> descendants = null;
+
 	/**
 	 * The encapsulated XML element.
 	 */
 	final private Element element;
 
 	/**
-	 * The string representation of these parameters.
+	 * The name of the element.
 	 */
-	final private String string;
+	final private String name;
 
 	/**
-	 * Creates a new Parameters object.
-	 * 
-	 * @param node
-	 *            the XML node to be encapsulated. The node should be an
-	 *            instance of <code>Element</code>.
-	 */
-	private Parameters(final Node node) {
-		ArgChecks.nullNotPermitted(node, "node");
-		if (!(node instanceof Element)) {
-			throw new IllegalArgumentException("The node should be an Element: " + node.getNodeName());
-		}
-		this.element = (Element) node;
-		this.string = element2string(this.element);
-	}
+	 * The string representation of these parameters, built on the first call
+	 * to {@link #toString()}.
+	 */
+	private volatile String string = null;
+
+	/**
+	 * The text content of these parameters, built on the first call.
+	 */
+	private volatile String text = null;
 
 	/**
 	 * Creates a new Parameters object.
@@ -96,8 +112,146 @@ public class Parameters {
 	 *            the XML element to be encapsulated.
 	 */
 	public Parameters(final Element element) {
+		ArgChecks.nullNotPermitted(element, "element");
 		this.element = element;
-		this.string = element2string(this.element);
+		this.name = element.getNodeName();
+
+		final NamedNodeMap attributeNodes = element.getAttributes();
+		if (attributeNodes.getLength() == 0) {
+			this.attributes = Collections.emptyMap();
+		} else {
+			final Map<String, String> map = new TreeMap<>();
+			for (int i = 0; i < attributeNodes.getLength(); i++) {
+				final Node attribute = attributeNodes.item(i);
+				map.put(attribute.getNodeName(), attribute.getNodeValue());
+			}
+			this.attributes = Collections.unmodifiableMap(map);
+		}
+
+		final List<Parameters> childList = new ArrayList<>();
+		final List<Object> contentList = new ArrayList<>();
+		for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+			switch (node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				final Parameters child = new Parameters((Element) node);
+				childList.add(child);
+				contentList.add(child);
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				contentList.add(node.getNodeValue());
+				break;
+			case Node.ENTITY_REFERENCE_NODE:
+				contentList.add(node.getTextContent());
+				break;
+			default:
+				// Comments and processing instructions are ignored.
+			}
+		}
+		this.children = childList.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(childList);
+		this.content = contentList.toArray();
+	}
+
+	/**
+	 * Appends the text content of these parameters and their descendants to
+	 * the specified builder.
+	 * 
+	 * @param builder
+	 *            the builder.
+	 */
+	private void appendText(final StringBuilder builder) {
+		for (final Object item : this.content) {
+			if (item instanceof Parameters) {
+				((Parameters) item).appendText(builder);
+			} else {
+				builder.append((String) item);
+			}
+		}
+	}
+
+	/**
+	 * Appends the XML representation of these parameters to the specified
+	 * builder.
+	 * 
+	 * @param builder
+	 *            the builder.
+	 */
+	private void appendXml(final StringBuilder builder) {
+		builder.append('<').append(this.name);
+		for (final Map.Entry<String, String> attribute : this.attributes.entrySet()) {
+			builder.append(' ').append(attribute.getKey()).append("=\"");
+			escape(builder, attribute.getValue(), true);
+			builder.append('"');
+		}
+		if (this.content.length == 0) {
+			builder.append("/>");
+		} else {
+			builder.append('>');
+			for (final Object item : this.content) {
+				if (item instanceof Parameters) {
+					((Parameters) item).appendXml(builder);
+				} else {
+					escape(builder, (String) item, false);
+				}
+			}
+			builder.append("</").append(this.name).append('>');
+		}
+	}
+
+	/**
+	 * Adds the sub-parameters at any depth, in document order, to the
+	 * specified index.
+	 * 
+	 * @param index
+	 *            the index, by name.
+	 * @param all
+	 *            the list of all the sub-parameters.
+	 */
+	private void collectDescendants(final Map<String, List<Parameters>> index, final List<Parameters> all) {
+		for (final Parameters child : this.children) {
+			all.add(child);
+			index.computeIfAbsent(child.name, key -> new ArrayList<>()).add(child);
+			child.collectDescendants(index, all);
+		}
+	}
+
+	/**
+	 * Returns the sub-parameters at any depth, by name.
+	 * 
+	 * @return the sub-parameters at any depth, by name.
+	 */
+	private Map<String, List<Parameters>> getDescendants() {
+		Map<String, List<Parameters>> result = this.descendants;
+		if (result == null) {
+			final Map<String, List<Parameters>> index = new HashMap<>();
+			final List<Parameters> all = new ArrayList<>();
+			this.collectDescendants(index, all);
+			index.put("*", all);
+			for (final Map.Entry<String, List<Parameters>> entry : index.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			result = index;
+			this.descendants = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the text content of the encapsulated element and its
+	 * descendants.
+	 * 
+	 * @return the text content of the encapsulated element and its
+	 *         descendants.
+	 */
+	private String getTextContent() {
+		String result = this.text;
+		if (result == null) {
+			final StringBuilder builder = new StringBuilder();
+			this.appendText(builder);
+			result = builder.toString();
+			this.text = result;
+		}
+		return result;
 	}
 
 	/**
@@ -110,14 +264,8 @@ public class Parameters {
 	 *         found.
 	 */
 	public Parameters get(String name) {
-		final Parameters result;
-		final Node node = this.element.getElementsByTagName(name).item(0);
-		if (node == null) {
-			result = null;
-		} else {
-			result = new Parameters(node);
-		}
-		return result;
+		final List<Parameters> list = this.getDescendants().get(name);
+		return (list == null) ? null : list.get(0);
 	}
 
 	/**
@@ -126,7 +274,7 @@ public class Parameters {
 	 * @return a list of all sub parameters.
 	 */
 	public List<Parameters> getAll() {
-		return getList(this.element.getChildNodes());
+		return this.children;
 	}
 
 	/**
@@ -139,7 +287,8 @@ public class Parameters {
 	 * @return a list of all sub parameters with the given name
 	 */
 	public List<Parameters> getAll(String name) {
-		return getList(this.element.getElementsByTagName(name));
+		final List<Parameters> list = this.getDescendants().get(name);
+		return (list == null) ? Collections.emptyList() : list;
 	}
 
 	/**
@@ -151,17 +300,16 @@ public class Parameters {
 	 *         attribute does not have a specified or default value.
 	 */
 	public String getAttribute(String name) {
-		return this.element.getAttribute(name);
+		final String result = this.attributes.get(name);
+		return (result == null) ? "" : result;
 	}
 
 	/**
-	 * Returns the text content of the encapsulated element and its descendants.
-	 * All space characters are cut.
 	 * 
 	 * @return the text content of the encapsulated element and its descendants.
 	 */
 	public String getCompactText() {
-		return this.element.getTextContent().replaceAll("(\\p{javaSpaceChar}|\\r|\\n|\\t)", "");
+		return spaces.matcher(this.getTextContent()).replaceAll("");
 	}
 
 	/**
@@ -173,7 +321,7 @@ public class Parameters {
 	 */
 	public Double getDoubleAttribute(String name) {
 		final Double result;
-		final String attribute = this.element.getAttribute(name);
+		final String attribute = this.getAttribute(name);
 		if (attribute.isEmpty()) {
 			result = null;
 		} else {
@@ -217,6 +365,9 @@ public class Parameters {
 	/**
 	 * Returns the encapsulated element.
 	 * 
+	 * The element is the DOM node these parameters were parsed from: its
+	 * later modifications are not seen by these parameters.
+	 * 
 	 * @return the encapsulated element.
 	 */
 	public Element getElem() {
@@ -253,12 +404,12 @@ public class Parameters {
 			if (split.length == 1) {
 				result = this.getIntAttribute(key);
 				if (result == null) {
-					throw new RuntimeException("Parameter not found: '" + element.getTagName()+"."+key + "'");
+					throw new RuntimeException("Parameter not found: '" + this.name + "." + key + "'");
 				}
 			} else {
 				final Parameters sub = this.get(split[0]);
 				if (sub == null) {
-					throw new RuntimeException("Parameter not found: '" + element.getTagName()+"."+key + "'");
+					throw new RuntimeException("Parameter not found: '" + this.name + "." + key + "'");
 					// result = null;
 				}
 				result = sub.getInt(split[1]);
@@ -275,11 +426,11 @@ public class Parameters {
 	 * @return The attribute value as a <code>Integer</code>.
 	 */
 	public Integer getIntAttribute(String name) {
-		if (!this.element.hasAttribute(name)) {
-			throw new RuntimeException(
-					"Attribute not found: \"" + name + "\" in \"" + this.element.getTagName() + "\".");
+		final String attribute = this.attributes.get(name);
+		if (attribute == null) {
+			throw new RuntimeException("Attribute not found: \"" + name + "\" in \"" + this.name + "\".");
 		}
-		return Integer.parseInt(this.element.getAttribute(name));
+		return Integer.parseInt(attribute);
 	}
 
 	/**
@@ -288,7 +439,7 @@ public class Parameters {
 	 * @return the name of the encapsulated element.
 	 */
 	public String getName() {
-		return this.element.getNodeName();
+		return this.name;
 	}
 
 	/**
@@ -322,7 +473,7 @@ public class Parameters {
 	 * @return the text content of this set of parameters and its descendants.
 	 */
 	public String getText() {
-		return this.element.getTextContent().trim();
+		return this.getTextContent().trim();
 	}
 
 	/**
@@ -338,7 +489,7 @@ public class Parameters {
 	 *         otherwise.
 	 */
 	public boolean hasAttribute(String name) {
-		return this.element.hasAttribute(name);
+		return this.attributes.containsKey(name);
 	}
 
 	/**
@@ -347,7 +498,7 @@ public class Parameters {
 	 * 
 	 * @param regex
 	 *            the delimiting regular expression
-	 *
+	 * 
 	 * @return the array of strings computed by splitting the text content of
 	 *         the encapsulated element around matches of the given regular
 	 *         expression.
@@ -358,7 +509,14 @@ public class Parameters {
 
 	@Override
 	public String toString() {
-		return this.string;
+		String result = this.string;
+		if (result == null) {
+			final StringBuilder builder = new StringBuilder();
+			this.appendXml(builder);
+			result = builder.toString();
+			this.string = result;
+		}
+		return result;
 	}
 
 }
@@ -0,0 +1,17 @@
+package jamel.util;
+
+/**
+ * A listener notified at the end of each period of a simulation.
+ */
+public interface PeriodListener {
+
+	/**
+	 * Invoked at the end of each period, once the sectors are closed and the
+	 * public data of the period are computed.
+	 * 
+	 * @param simulation
+	 *            the simulation whose period is closed.
+	 */
+	void periodClosed(Simulation simulation);
+
+}
@@ -0,0 +1,229 @@
+package jamel.util;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Provides independent, named streams of random numbers, all derived
+ * deterministically from one seed.
+ *
+ * Two streams with different names do not share any state: drawing from one
+ * stream does not change the numbers drawn from another, whatever the order
+ * (or the thread) in which they are drawn.
+ *
+ * The streams are serializable: their states can be saved and restored with
+ * the rest of the simulation.
+ */
+public class RandomStreams implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * A {@code Random} that draws its numbers from a SplitMix64 generator
+	 * (the algorithm of {@code SplittableRandom}, which gives the same
+	 * sequences).
+	 *
+	 * Unlike {@code SplittableRandom}, this class is serializable, so that the
+	 * streams can be saved in a checkpoint. Unlike {@code Random}, it is not
+	 * thread-safe: a stream should be used by only one agent, sector or phase
+	 * at a time.
+	 */
+	private static class StreamRandom extends Random {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The increment of the state.
+		 */
+		private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+		/**
+		 * Returns the 32 high bits of the mix of the specified value.
+		 *
+		 * @param z
+		 *            the value to be mixed.
+		 * @return the mixed value.
+		 */
+		private static int mix32(long z) {
+			z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+			return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+		}
+
+		/**
+		 * Returns the mix of the specified value.
+		 *
+		 * @param z
+		 *            the value to be mixed.
+		 * @return the mixed value.
+		 */
+		private static long mix64(long z) {
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
+		}
+
+		/**
+		 * {@code true} once the stream is created.
+		 */
+		final private boolean initialized;
+
+		/**
+		 * The state of the generator.
+		 */
+		private long state;
+
+		/**
+		 * Creates a new stream.
+		 *
+		 * @param seed
+		 *            the seed of the stream.
+		 */
+		private StreamRandom(final long seed) {
+			super(0L);
+			this.state = seed;
+			this.initialized = true;
+		}
+
+		/**
+		 * Advances the state and returns it.
+		 *
+		 * @return the new state.
+		 */
+		private long nextState() {
+			return this.state += GAMMA;
+		}
+
+		@Override
+		protected int next(int bits) {
+			return mix32(this.nextState()) >>> (32 - bits);
+		}
+
+		@Override
+		public boolean nextBoolean() {
+			return mix32(this.nextState()) < 0;
+		}
+
+		@Override
+		public double nextDouble() {
+			return (this.nextLong() >>> 11) * 0x1.0p-53;
+		}
+
+		@Override
+		public int nextInt() {
+			return mix32(this.nextState());
+		}
+
+		@Override
+		public int nextInt(int bound) {
+			if (bound <= 0) {
+				throw new IllegalArgumentException("bound must be positive");
+			}
+			int r = this.nextInt();
+			final int m = bound - 1;
+			if ((bound & m) == 0) {
+				r &= m;
+			} else {
+				for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = this.nextInt() >>> 1)
+					;
+			}
+			return r;
+		}
+
+		@Override
+		public long nextLong() {
+			return mix64(this.nextState());
+		}
+
+		@Override
+		public void setSeed(long seed) {
+			// Called once by the constructor of Random, before the stream is
+			// initialized.
+			if (this.initialized) {
+				throw new UnsupportedOperationException("The seed of a stream cannot be changed.");
+			}
+		}
+
+	}
+
+	/**
+	 * Returns a well-mixed 64-bit value (the finalizer of MurmurHash3).
+	 *
+	 * @param z
+	 *            the value to be mixed.
+	 * @return the mixed value.
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
+	}
+
+	/**
+	 * Returns the seed of the specified stream.
+	 *
+	 * @param seed
+	 *            the seed of the whole set of streams.
+	 * @param name
+	 *            the name of the stream.
+	 * @return the seed of the specified stream.
+	 */
+	public static long getSeed(final long seed, final String name) {
+		// 64-bit FNV-1a hash of the name, stable from one JVM to another.
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return mix64(mix64(seed) ^ hash);
+	}
+
+	/**
+	 * The seed of the whole set of streams.
+	 */
+	final private long seed;
+
+	/**
+	 * The streams already created, by name.
+	 */
+	final private Map<String, Random> streams = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new set of streams.
+	 *
+	 * @param seed
+	 *            the seed from which all the streams are derived.
+	 */
+	public RandomStreams(final long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the specified stream, creating it at the first call.
+	 *
+	 * @param name
+	 *            the name of the stream.
+	 * @return the specified stream.
+	 */
+	public Random getStream(final String name) {
+		ArgChecks.nullNotPermitted(name, "name");
+		return this.streams.computeIfAbsent(name, key -> new StreamRandom(getSeed(this.seed, key)));
+	}
+
+	/**
+	 * Removes the specified stream, which is no longer saved with the others.
+	 *
+	 * A later call to {@link #getStream(String)} with the same name would
+	 * start the stream again from its seed: only the streams that will never be
+	 * used again should be removed.
+	 *
+	 * @param name
+	 *            the name of the stream.
+	 */
+	public void removeStream(final String name) {
+		ArgChecks.nullNotPermitted(name, "name");
+		this.streams.remove(name);
+	}
+
+}
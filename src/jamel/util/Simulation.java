@@ -10,6 +10,14 @@ import jamel.data.Expression;
  */
 public interface Simulation {
 
+	/**
+	 * Adds a listener, notified at the end of each period.
+	 * 
+	 * @param listener
+	 *            the listener to be added.
+	 */
+	void addPeriodListener(PeriodListener listener);
+
 	/**
 	 * Brings up a dialog that displays an error message.
 	 * 
@@ -111,6 +119,17 @@ public interface Simulation {
 	 */
 	Expression getTotalMemory();
 
+	/**
+	 * Returns {@code true} if the simulation can run in batch mode: without
+	 * gui, and up to the period given by the {@code end} attribute of its
+	 * scenario.
+	 * 
+	 * @return {@code true} if the simulation can run in batch mode.
+	 */
+	default boolean isBatchable() {
+		return false;
+	}
+
 	/**
 	 * Returns <code>true</code> if the circuit is paused, <code>false</code>
 	 * otherwise.